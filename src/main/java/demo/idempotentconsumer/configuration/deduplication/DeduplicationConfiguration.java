@@ -0,0 +1,97 @@
+package demo.idempotentconsumer.configuration.deduplication;
+
+import demo.idempotentconsumer.repository.AppendOnlyRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.service.DatabaseProcessedEventStore;
+import demo.idempotentconsumer.service.DuplicateEventReporter;
+import demo.idempotentconsumer.service.KafkaProcessedEventStore;
+import demo.idempotentconsumer.service.ProcessedEventStore;
+import demo.idempotentconsumer.service.RecentEventIdCache;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.core.KafkaAdmin;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects where processed events are recorded with {@code deduplication.backend}: in the database, atomically with the
+ * processing, or in compacted Kafka topics, without a database round trip per event.
+ *
+ * The backend is selected at runtime rather than through conditions, because conditions are evaluated at build time
+ * in the ahead-of-time processed build.
+ */
+@Configuration
+public class DeduplicationConfiguration {
+
+    public enum Backend { DATABASE, KAFKA }
+
+    @Bean
+    public ProcessedEventStore processedEventStore(@Value("${deduplication.backend}") final Backend backend,
+                                                   final ObjectProvider<ProcessedEventRepository> processedEventRepository,
+                                                   final ObjectProvider<AppendOnlyRepository> appendOnlyRepository,
+                                                   final ObjectProvider<RecentEventIdCache> recentEventIdCache,
+                                                   final ObjectProvider<KafkaAdmin> kafkaAdmin,
+                                                   final DuplicateEventReporter duplicateEventReporter,
+                                                   @Value("${deduplication.warm-up.window}") final Duration window,
+                                                   @Value("${deduplication.warm-up.maxIdsPerPartition}") final int maxIdsPerPartition,
+                                                   @Value("${kafka.bootstrap-servers}") final String bootstrapServers,
+                                                   @Value("${deduplication.kafka.topicSuffix}") final String topicSuffix,
+                                                   @Value("${deduplication.kafka.retention}") final Duration retention,
+                                                   @Value("${deduplication.kafka.expectedIdsPerPartition}") final int expectedIdsPerPartition,
+                                                   @Value("${deduplication.kafka.catchUpTimeout}") final Duration catchUpTimeout,
+                                                   @Value("${deduplication.kafka.idleStateTimeout}") final Duration idleStateTimeout) {
+        DatabaseProcessedEventStore databaseProcessedEventStore = new DatabaseProcessedEventStore(
+                processedEventRepository.getObject(),
+                appendOnlyRepository.getObject(),
+                recentEventIdCache.getObject(),
+                duplicateEventReporter,
+                window,
+                maxIdsPerPartition);
+        return switch (backend) {
+            case DATABASE -> databaseProcessedEventStore;
+            // Events not consumed from Kafka, like those of the asynchronous service, are still recorded in the database
+            case KAFKA -> new KafkaProcessedEventStore(
+                    kafkaAdmin.getObject(),
+                    new KafkaProducer<>(producerConfig(bootstrapServers), new ByteArraySerializer(), new ByteArraySerializer()),
+                    duplicateEventReporter,
+                    databaseProcessedEventStore,
+                    new KafkaConsumer<>(restoreConsumerConfig(bootstrapServers), new ByteArrayDeserializer(), new ByteArrayDeserializer()),
+                    topicSuffix,
+                    retention,
+                    expectedIdsPerPartition,
+                    catchUpTimeout,
+                    idleStateTimeout);
+        };
+    }
+
+    private static Map<String, Object> producerConfig(final String bootstrapServers) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.ACKS_CONFIG, "all");
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return config;
+    }
+
+    /**
+     * The restore consumer is assigned partitions explicitly and never commits offsets, so it needs no group. It must
+     * not create state topics, which need to be compacted and co-partitioned.
+     */
+    private static Map<String, Object> restoreConsumerConfig(final String bootstrapServers) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, false);
+        config.put(ConsumerConfig.ALLOW_AUTO_CREATE_TOPICS_CONFIG, false);
+        config.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, 10000);
+        return config;
+    }
+}
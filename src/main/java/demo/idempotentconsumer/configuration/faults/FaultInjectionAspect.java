@@ -0,0 +1,71 @@
+package demo.idempotentconsumer.configuration.faults;
+
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import lombok.RequiredArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Applies the {@link FaultInjector} around the repositories, the blob store and the {@code KafkaClient}. Faults of
+ * reactive repositories are injected when subscribed to, off the caller's thread.
+ */
+@Aspect
+@Component
+@RequiredArgsConstructor
+public class FaultInjectionAspect {
+
+    private final FaultInjector faultInjector;
+
+    @Around("execution(public * org.springframework.data.repository.Repository+.*(..)) " +
+            "|| execution(public * demo.idempotentconsumer.repository.*Repository.*(..))")
+    public Object aroundDatabase(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(Dependency.DATABASE, joinPoint);
+    }
+
+    @Around("execution(public * demo.idempotentconsumer.repository.BlobStore+.*(..))")
+    public Object aroundBlobStore(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(Dependency.BLOB_STORE, joinPoint);
+    }
+
+    @Around("execution(public * demo.idempotentconsumer.configuration.kafka.KafkaClient.*(..)) " +
+            "&& !execution(* demo.idempotentconsumer.configuration.kafka.KafkaClient.outboundRecord(..))")
+    public Object aroundKafka(ProceedingJoinPoint joinPoint) throws Throwable {
+        return proceed(Dependency.KAFKA, joinPoint);
+    }
+
+    private Object proceed(Dependency dependency, ProceedingJoinPoint joinPoint) throws Throwable {
+        Class<?> returnType = ((MethodSignature) joinPoint.getSignature()).getReturnType();
+        if (faultInjector.isEnabled() && Mono.class.isAssignableFrom(returnType)) {
+            // Non-blocking calls mustn't be delayed on the caller's thread
+            return Mono.fromRunnable(() -> faultInjector.inject(dependency))
+                    .subscribeOn(Schedulers.boundedElastic())
+                    .then(Mono.defer(() -> proceedUnchecked(joinPoint)));
+        }
+        if (faultInjector.isEnabled()) {
+            try {
+                faultInjector.inject(dependency);
+            } catch (RuntimeException fault) {
+                // Asynchronous calls report failures through their result, not by throwing
+                if (CompletableFuture.class.isAssignableFrom(returnType)) return CompletableFuture.failedFuture(fault);
+                throw fault;
+            }
+        }
+        return joinPoint.proceed();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Mono<Object> proceedUnchecked(ProceedingJoinPoint joinPoint) {
+        try {
+            return (Mono<Object>) joinPoint.proceed();
+        } catch (Throwable e) {
+            return Mono.error(e);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package demo.idempotentconsumer.configuration.faults;
+
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Whether faults may be injected, and the faults injected from startup on.
+ */
+@Data
+@Component
+@ConfigurationProperties("fault-injection")
+public class FaultInjectionProperties {
+
+    private boolean enabled;
+    private Map<Dependency, FaultProfile> dependencies = new EnumMap<>(Dependency.class);
+}
@@ -0,0 +1,91 @@
+package demo.idempotentconsumer.configuration.faults;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.kafka.KafkaException;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Injects latency, stalls and errors into the calls to the application's dependencies, to measure how throughput and
+ * tail latency degrade when one of them slows down or fails.
+ *
+ * Disabled unless {@code fault-injection.enabled} is set, which only the test profile does. The faults of each
+ * dependency can be changed at runtime, see {@code FaultInjectionController}. Injected errors are the exceptions the
+ * real dependency would throw, so they take the same error handling paths.
+ */
+@Slf4j
+@Component
+public class FaultInjector {
+
+    public enum Dependency { DATABASE, BLOB_STORE, KAFKA }
+
+    private final boolean enabled;
+    private final Map<Dependency, FaultProfile> profiles = new ConcurrentHashMap<>();
+
+    @Autowired
+    public FaultInjector(FaultInjectionProperties properties) {
+        this.enabled = properties.isEnabled();
+        properties.getDependencies().forEach(this::setProfile);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Map<Dependency, FaultProfile> getProfiles() {
+        return new TreeMap<>(profiles);
+    }
+
+    public void setProfile(Dependency dependency, FaultProfile profile) {
+        if (!enabled) throw new IllegalStateException("Fault injection is disabled");
+
+        profile.validate();
+        profiles.put(dependency, profile);
+        log.info("Injecting faults into {}: {}", dependency, profile);
+    }
+
+    public void clear() {
+        profiles.clear();
+        log.info("Cleared injected faults");
+    }
+
+    /**
+     * Applies the faults of the dependency to a call about to be made to it.
+     */
+    void inject(Dependency dependency) {
+        FaultProfile profile = profiles.get(dependency);
+        if (profile == null) return;
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long pauseMs = profile.sampleLatencyMs(random);
+        if (profile.getStallRate() > 0 && random.nextDouble() < profile.getStallRate()) pauseMs += profile.getStallMs();
+        if (pauseMs > 0) pause(pauseMs);
+
+        if (profile.getErrorRate() > 0 && random.nextDouble() < profile.getErrorRate()) throw fault(dependency);
+    }
+
+    private static void pause(long pauseMs) {
+        try {
+            Thread.sleep(pauseMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static RuntimeException fault(Dependency dependency) {
+        String message = "Injected fault: " + dependency;
+        return switch (dependency) {
+            case DATABASE -> new DataAccessResourceFailureException(message);
+            case BLOB_STORE -> new UncheckedIOException(new IOException(message));
+            case KAFKA -> new KafkaException(message);
+        };
+    }
+}
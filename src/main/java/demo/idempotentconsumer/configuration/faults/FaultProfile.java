@@ -0,0 +1,52 @@
+package demo.idempotentconsumer.configuration.faults;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Random;
+
+/**
+ * The faults injected into the calls to a dependency.
+ *
+ * Latency is log-normally distributed with the given median and 99th percentile, which gives the long tail real
+ * dependencies have; it is fixed if both are equal. Independently, a call stalls for {@link #stallMs} with probability
+ * {@link #stallRate}, e.g. to simulate a failover, and fails with probability {@link #errorRate}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class FaultProfile {
+
+    /**
+     * The standard normal quantile of the 99th percentile.
+     */
+    private static final double Z_99 = 2.3263;
+
+    private long p50LatencyMs;
+    private long p99LatencyMs;
+    private double errorRate;
+    private double stallRate;
+    private long stallMs;
+
+    public void validate() {
+        if (p50LatencyMs < 0 || stallMs < 0) {
+            throw new IllegalArgumentException("Latencies must not be negative");
+        }
+        if (p99LatencyMs > p50LatencyMs && p50LatencyMs == 0) {
+            throw new IllegalArgumentException("A latency distribution needs a positive median");
+        }
+        if (errorRate < 0 || errorRate > 1 || stallRate < 0 || stallRate > 1) {
+            throw new IllegalArgumentException("Rates must be between 0 and 1");
+        }
+    }
+
+    long sampleLatencyMs(Random random) {
+        if (p99LatencyMs <= p50LatencyMs) return p50LatencyMs;
+
+        double sigma = Math.log((double) p99LatencyMs / p50LatencyMs) / Z_99;
+        return Math.round(p50LatencyMs * Math.exp(sigma * random.nextGaussian()));
+    }
+}
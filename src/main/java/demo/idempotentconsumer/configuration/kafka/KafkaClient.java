@@ -1,11 +1,15 @@
 package demo.idempotentconsumer.configuration.kafka;
 
+import java.nio.charset.StandardCharsets;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
+import demo.idempotentconsumer.model.event.inbound.EventIds;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
 import org.apache.kafka.clients.producer.RecordMetadata;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.kafka.KafkaException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
@@ -15,12 +19,15 @@ import org.springframework.stereotype.Component;
 @Component
 public class KafkaClient {
     private final KafkaTemplate<String, String> kafkaTemplate;
+    private final boolean binaryEventIdHeaders;
 
     @Autowired
     public KafkaClient(
-            KafkaTemplate<String, String> kafkaTemplate
+            KafkaTemplate<String, String> kafkaTemplate,
+            @Value("${kafka.producer.binaryEventIdHeaders}") boolean binaryEventIdHeaders
     ) {
         this.kafkaTemplate = kafkaTemplate;
+        this.binaryEventIdHeaders = binaryEventIdHeaders;
     }
 
     public static final String EVENT_ID_HEADER_KEY = "demo_eventIdHeader";
@@ -28,20 +35,56 @@ public class KafkaClient {
 
     public SendResult sendMessage(String key, String data) {
         try {
-            String payload = "eventId: " + UUID.randomUUID() + ", payload: " + data;
-            final ProducerRecord<String, String> record =
-                    new ProducerRecord<>(OUTBOUND_TOPIC, key, payload);
+            final ProducerRecord<String, String> record = outboundRecord(key, data);
 
             final SendResult<String, String> result = kafkaTemplate.send(record).get();
             final RecordMetadata metadata = result.getRecordMetadata();
 
-            log.debug(String.format("Sent record(key=%s value=%s) meta(topic=%s, partition=%d, offset=%d)",
-                    record.key(), record.value(), metadata.topic(), metadata.partition(), metadata.offset()));
+            log.debug("Sent record(key={} value={}) meta(topic={}, partition={}, offset={})",
+                    record.key(), record.value(), metadata.topic(), metadata.partition(), metadata.offset());
 
             return result;
         } catch (Exception e) {
-            log.error("Error sending message to topic " + OUTBOUND_TOPIC, e);
+            log.error("Error sending message to topic {}", OUTBOUND_TOPIC, e);
             throw new KafkaException(e.getMessage());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Builds the message {@link #sendMessage} sends for the given order data, for clients sending it themselves.
+     */
+    public ProducerRecord<String, String> outboundRecord(String key, String data) {
+        UUID eventId = UUID.randomUUID();
+        String payload = "eventId: " + eventId + ", payload: " + data;
+        final ProducerRecord<String, String> record = new ProducerRecord<>(OUTBOUND_TOPIC, key, payload);
+        record.headers().add(EVENT_ID_HEADER_KEY, eventIdHeader(eventId));
+        return record;
+    }
+
+    /**
+     * Sends a message without waiting for the acknowledgement. Messages sent with the same key from one thread are
+     * written to their partition in the order sent, as the producer is idempotent.
+     */
+    public CompletableFuture<SendResult<String, String>> sendMessageAsync(String topic, UUID eventId, String key, String payload) {
+        final ProducerRecord<String, String> record = new ProducerRecord<>(topic, key, payload);
+        record.headers().add(EVENT_ID_HEADER_KEY, eventIdHeader(eventId));
+        return kafkaTemplate.send(record).whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Error sending message to topic {}", topic, e);
+            } else {
+                log.debug("Sent record(key={}) meta(topic={}, partition={}, offset={})",
+                        key, topic, result.getRecordMetadata().partition(), result.getRecordMetadata().offset());
+            }
+        });
+    }
+
+    /**
+     * The 16 byte form is parsed by consumers without decoding any text; the canonical text form is for consumers
+     * that have not been upgraded to accept it yet.
+     */
+    private byte[] eventIdHeader(UUID eventId) {
+        return binaryEventIdHeaders
+                ? EventIds.toBytes(eventId)
+                : eventId.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
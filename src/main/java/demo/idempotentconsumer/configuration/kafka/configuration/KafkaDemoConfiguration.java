@@ -1,63 +1,246 @@
 package demo.idempotentconsumer.configuration.kafka.configuration;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Pattern;
+
+import demo.idempotentconsumer.configuration.mapper.MappingException;
+import demo.idempotentconsumer.configuration.startup.StartupProbe;
+import demo.idempotentconsumer.consumer.DeduplicationWarmUpListener;
+import demo.idempotentconsumer.consumer.KafkaReplayConsumer;
+import demo.idempotentconsumer.exception.InvalidEventException;
 
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.admin.AdminClientConfig;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.CooperativeStickyAssignor;
 import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.TopicPartition;
 import org.apache.kafka.common.serialization.StringDeserializer;
 import org.apache.kafka.common.serialization.StringSerializer;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
 import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.kafka.annotation.EnableKafkaRetryTopic;
 import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.ContainerCustomizer;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaAdmin;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.listener.ConcurrentMessageListenerContainer;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.retrytopic.TopicSuffixingStrategy;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
+import org.springframework.util.backoff.ExponentialBackOff;
 
 @Slf4j
 @EntityScan("demo.idempotentconsumer.model")
 @EnableJpaRepositories("demo.idempotentconsumer.repository")
 @EnableTransactionManagement
-@ComponentScan(basePackages = {"demo.idempotentconsumer"})
+@EnableKafkaRetryTopic
 @Configuration
 public class KafkaDemoConfiguration {
 
+    /**
+     * Inbound topics whose failed records are retried on non-blocking retry topics before landing on a dead-letter topic.
+     */
+    private static final List<String> RETRYABLE_TOPICS = List.of(
+            "demo-idempotent-inbound-topic",
+            "demo-atomic-idempotent-inbound-topic",
+            "demo-idempotent-with-outbox-inbound-topic",
+            "demo-atomic-idempotent-with-outbox-inbound-topic",
+            "demo-non-idempotent-inbound-topic",
+            "demo-atomic-non-idempotent-inbound-topic"
+    );
+
+    private static final Pattern INVALID_GROUP_INSTANCE_ID_CHARACTERS = Pattern.compile("[^a-zA-Z0-9._-]");
+
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(final ConsumerFactory<String, String> consumerFactory,
+                                                                                                final DeduplicationWarmUpListener deduplicationWarmUpListener,
+                                                                                                final StartupProbe startupProbe,
+                                                                                                @Value("${kafka.consumer.instanceId}") final String instanceId,
+                                                                                                @Value("${kafka.consumer.drainTimeoutMs}") final long drainTimeoutMs) {
+        final ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory();
+        factory.setConsumerFactory(consumerFactory);
+        factory.getContainerProperties().setConsumerRebalanceListener(deduplicationWarmUpListener);
+        factory.getContainerProperties().setShutdownTimeout(drainTimeoutMs);
+        factory.setContainerCustomizer(staticMembership(instanceId));
+        factory.setRecordInterceptor(startupProbe);
+        return factory;
+    }
+
+    /**
+     * Batch listeners receive a whole poll at once, e.g. to conflate records for the same key. Retry topics don't
+     * support batch listeners, so failed records are retried in place with the same backoff before being dead-lettered.
+     */
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaBatchListenerContainerFactory(final ConsumerFactory<String, String> consumerFactory,
+                                                                                                     final KafkaTemplate<String, String> kafkaTemplate,
+                                                                                                     final DeduplicationWarmUpListener deduplicationWarmUpListener,
+                                                                                                     final StartupProbe startupProbe,
+                                                                                                     @Value("${kafka.retry.maxAttempts}") final int maxAttempts,
+                                                                                                     @Value("${kafka.retry.initialIntervalMs}") final long initialIntervalMs,
+                                                                                                     @Value("${kafka.retry.multiplier}") final double multiplier,
+                                                                                                     @Value("${kafka.retry.maxIntervalMs}") final long maxIntervalMs,
+                                                                                                     @Value("${kafka.consumer.instanceId}") final String instanceId,
+                                                                                                     @Value("${kafka.consumer.drainTimeoutMs}") final long drainTimeoutMs) {
+        final ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(maxAttempts - 1);
+        backOff.setInitialInterval(initialIntervalMs);
+        backOff.setMultiplier(multiplier);
+        backOff.setMaxInterval(maxIntervalMs);
+
+        final DeadLetterPublishingRecoverer recoverer = new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, exception) -> new TopicPartition(record.topic() + "-dlt", -1));
+        final DefaultErrorHandler errorHandler = new DefaultErrorHandler(recoverer, backOff);
+        errorHandler.addNotRetryableExceptions(MappingException.class, InvalidEventException.class);
+
+        final ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setConsumerRebalanceListener(deduplicationWarmUpListener);
+        factory.getContainerProperties().setShutdownTimeout(drainTimeoutMs);
+        factory.setContainerCustomizer(staticMembership(instanceId));
+        factory.setBatchInterceptor(startupProbe);
+        factory.setCommonErrorHandler(errorHandler);
+        return factory;
+    }
+
+    /**
+     * Replays fetch large chunks, as each chunk is written with a handful of set-based statements. Failed chunks are
+     * retried with the same backoff, but without a limit: skipping a chunk would silently lose up to
+     * {@code replay.maxPollRecords} records of a replay meant to recover them, and there's no dead-letter topic, since
+     * the replayed records were delivered before. A chunk that keeps failing holds the replay up until it is fixed or
+     * the replay is stopped; its offsets are never committed.
+     */
     @Bean
-    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaListenerContainerFactory(final ConsumerFactory<String, String> consumerFactory) {
+    public ConcurrentKafkaListenerContainerFactory<String, String> kafkaReplayListenerContainerFactory(final ConsumerFactory<String, String> consumerFactory,
+                                                                                                      @Value("${replay.maxPollRecords}") final int maxPollRecords,
+                                                                                                      @Value("${kafka.retry.initialIntervalMs}") final long initialIntervalMs,
+                                                                                                      @Value("${kafka.retry.multiplier}") final double multiplier,
+                                                                                                      @Value("${kafka.retry.maxIntervalMs}") final long maxIntervalMs) {
+        final ExponentialBackOff backOff = new ExponentialBackOff();
+        backOff.setInitialInterval(initialIntervalMs);
+        backOff.setMultiplier(multiplier);
+        backOff.setMaxInterval(maxIntervalMs);
+        backOff.setMaxElapsedTime(Long.MAX_VALUE);
+
         final ConcurrentKafkaListenerContainerFactory<String, String> factory = new ConcurrentKafkaListenerContainerFactory();
         factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(backOff));
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(maxPollRecords));
+        factory.getContainerProperties().getKafkaConsumerProperties()
+                .setProperty(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
         return factory;
     }
 
+    /**
+     * The replay consumer is registered as a plain container rather than with {@code @KafkaListener}: it listens to
+     * topics covered by the retry topic configuration, which can't decorate batch listeners.
+     */
+    @Bean
+    public ConcurrentMessageListenerContainer<String, String> replayListenerContainer(final ConcurrentKafkaListenerContainerFactory<String, String> kafkaReplayListenerContainerFactory,
+                                                                                       final KafkaReplayConsumer replayConsumer,
+                                                                                       @Value("${replay.topics}") final String topics,
+                                                                                       @Value("${replay.groupId}") final String groupId,
+                                                                                       @Value("${replay.enabled}") final boolean enabled) {
+        final ConcurrentMessageListenerContainer<String, String> container = kafkaReplayListenerContainerFactory.createContainer(topics.split(","));
+        container.getContainerProperties().setGroupId(groupId);
+        container.getContainerProperties().setMessageListener(replayConsumer);
+        container.getContainerProperties().setConsumerRebalanceListener(replayConsumer);
+        container.setAutoStartup(enabled);
+        return container;
+    }
+
+    /**
+     * Failed records are moved off the main partition onto retry topics with exponential backoff, so a poison message
+     * doesn't hold back the healthy records behind it. Errors that can never succeed (unreadable payloads, invalid
+     * events) skip the retries and go straight to the dead-letter topic, which carries the failure metadata as headers.
+     */
+    @Bean
+    public RetryTopicConfiguration retryTopicConfiguration(final KafkaTemplate<String, String> kafkaTemplate,
+                                                           @Value("${kafka.retry.maxAttempts}") final int maxAttempts,
+                                                           @Value("${kafka.retry.initialIntervalMs}") final long initialIntervalMs,
+                                                           @Value("${kafka.retry.multiplier}") final double multiplier,
+                                                           @Value("${kafka.retry.maxIntervalMs}") final long maxIntervalMs) {
+        return RetryTopicConfigurationBuilder
+                .newInstance()
+                .includeTopics(RETRYABLE_TOPICS)
+                .maxAttempts(maxAttempts)
+                .exponentialBackoff(initialIntervalMs, multiplier, maxIntervalMs)
+                .notRetryOn(List.of(MappingException.class, InvalidEventException.class))
+                .traversingCauses()
+                .setTopicSuffixingStrategy(TopicSuffixingStrategy.SUFFIX_WITH_INDEX_VALUE)
+                .dltHandlerMethod("deadLetterEventHandler", "handle")
+                .create(kafkaTemplate);
+    }
+
+    @Bean
+    public KafkaAdmin kafkaAdmin(@Value("${kafka.bootstrap-servers}") final String bootstrapServers) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(AdminClientConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        return new KafkaAdmin(config);
+    }
+
     @Bean
     public KafkaTemplate<String, String> kafkaTemplate(final ProducerFactory<String, String> producerFactory) {
         return new KafkaTemplate<>(producerFactory);
     }
 
+    /**
+     * Rebalances are cooperative and incremental: only the partitions that move are revoked, and the other consumers
+     * keep processing theirs while the group rebalances.
+     */
     @Bean
     public ConsumerFactory<String, String> consumerFactory(@Value("${kafka.bootstrap-servers}") final String bootstrapServers,
-                                                           @Value("${kafka.consumer.maxPollIntervalMs}") final String maxPollIntervalMs) {
+                                                           @Value("${kafka.consumer.maxPollIntervalMs}") final String maxPollIntervalMs,
+                                                           @Value("${kafka.consumer.sessionTimeoutMs}") final String sessionTimeoutMs) {
         final Map<String, Object> config = new HashMap<>();
         config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
         config.put(ConsumerConfig.GROUP_ID_CONFIG, "demo-kafka");
         config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
         config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
+        config.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, sessionTimeoutMs);
+        config.put(ConsumerConfig.PARTITION_ASSIGNMENT_STRATEGY_CONFIG, CooperativeStickyAssignor.class.getName());
         return new DefaultKafkaConsumerFactory<>(config);
     }
 
+    /**
+     * Static membership: each consumer joins with a {@code group.instance.id} that is stable across restarts of this
+     * instance, so a restart within the session timeout gets the same partitions back without a rebalance. The Id is
+     * derived per container, since containers share consumer groups, and containers with several consumers suffix it
+     * per consumer. Disabled if {@code instanceId} is empty.
+     *
+     * Generated listener Ids contain a {@code #}, which isn't allowed in group instance Ids.
+     */
+    private static ContainerCustomizer<String, String, ConcurrentMessageListenerContainer<String, String>> staticMembership(final String instanceId) {
+        return container -> {
+            if (!instanceId.isEmpty()) {
+                container.getContainerProperties().getKafkaConsumerProperties()
+                        .setProperty(ConsumerConfig.GROUP_INSTANCE_ID_CONFIG, instanceId + "-" + INVALID_GROUP_INSTANCE_ID_CHARACTERS.matcher(container.getListenerId()).replaceAll("_"));
+            }
+        };
+    }
+
     @Bean
-    public ProducerFactory<String, String> producerFactory(@Value("${kafka.bootstrap-servers}") final String bootstrapServers) {
+    public ProducerFactory<String, String> producerFactory(@Value("${kafka.bootstrap-servers}") final String bootstrapServers,
+                                                           @Value("${kafka.producer.compressionType}") final String compressionType) {
         final Map<String, Object> config = new HashMap<>();
         config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
         config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
         return new DefaultKafkaProducerFactory<>(config);
@@ -0,0 +1,151 @@
+package demo.idempotentconsumer.configuration.mapper;
+
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary encoding of {@link InboundEvent}s.
+ *
+ * The layout is a magic byte, a schema version and a flags byte, followed by the fields in schema order. Each field
+ * is a varint of (UTF-8 length + 1), where 0 stands for null, followed by its bytes. Bodies of at least
+ * {@link #COMPRESSION_THRESHOLD} bytes are deflated when that makes them smaller, in which case the flags byte is
+ * {@link #FLAG_DEFLATED} and the body is preceded by its uncompressed length.
+ */
+public class InboundEventCodec {
+
+    private static final byte MAGIC = 'E';
+    private static final byte VERSION = 1;
+    private static final byte FLAG_DEFLATED = 1;
+    private static final int HEADER_LENGTH = 3;
+    private static final int COMPRESSION_THRESHOLD = 128;
+
+    public static byte[] encode(InboundEvent event) throws MappingException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        writeString(body, event.getId());
+        writeString(body, event.getData());
+        byte[] raw = body.toByteArray();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length + HEADER_LENGTH);
+        out.write(MAGIC);
+        out.write(VERSION);
+        byte[] deflated = raw.length >= COMPRESSION_THRESHOLD ? deflate(raw) : null;
+        if (deflated != null && deflated.length + varIntLength(raw.length) < raw.length) {
+            out.write(FLAG_DEFLATED);
+            writeVarInt(out, raw.length);
+            out.writeBytes(deflated);
+        } else {
+            out.write(0);
+            out.writeBytes(raw);
+        }
+        return out.toByteArray();
+    }
+
+    public static InboundEvent decode(byte[] bytes) throws MappingException {
+        try {
+            ByteBuffer in = ByteBuffer.wrap(bytes);
+            if (in.get() != MAGIC || in.get() != VERSION) {
+                throw new IllegalArgumentException("Not an encoded inbound event of version " + VERSION);
+            }
+            byte flags = in.get();
+            if (flags == FLAG_DEFLATED) {
+                int rawLength = readVarInt(in);
+                in = ByteBuffer.wrap(inflate(bytes, in.position(), rawLength));
+            }
+            return InboundEvent.builder()
+                    .id(readString(in))
+                    .data(readString(in))
+                    .build();
+        } catch (MappingException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new MappingException(e);
+        }
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String value) {
+        if (value == null) {
+            writeVarInt(out, 0);
+            return;
+        }
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarInt(out, utf8.length + 1);
+        out.writeBytes(utf8);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = readVarInt(in) - 1;
+        if (length < 0) return null;
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    private static int varIntLength(int value) {
+        int length = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            length++;
+        }
+        return length;
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+            byte[] buffer = new byte[Math.min(raw.length, 8192)];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int offset, int rawLength) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes, offset, bytes.length - offset);
+            byte[] raw = new byte[rawLength];
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int count = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                inflated += count;
+            }
+            if (inflated != rawLength) {
+                throw new DataFormatException("Expected " + rawLength + " bytes but inflated " + inflated);
+            }
+            return raw;
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package demo.idempotentconsumer.configuration.reactive;
+
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderOptions;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Clients of the reactive pipeline: a pooled R2DBC connection factory, and a reactive Kafka consumer and producer.
+ * None of them connects before the pipeline is started with {@code reactive.enabled}.
+ *
+ * The R2DBC transaction manager isn't registered as a bean, so that {@code @Transactional} keeps resolving to the JPA
+ * transaction manager; R2dbcTransactionManagerAutoConfiguration is excluded for the same reason.
+ */
+@Configuration
+public class ReactiveConfiguration {
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool reactiveConnectionFactory(@Value("${reactive.r2dbc.url}") final String url,
+                                                    @Value("${spring.datasource.username:}") final String username,
+                                                    @Value("${spring.datasource.password:}") final String password,
+                                                    @Value("${reactive.r2dbc.maxPoolSize}") final int maxPoolSize) {
+        final ConnectionFactoryOptions.Builder options = ConnectionFactoryOptions.parse(url).mutate();
+        if (!username.isEmpty()) options.option(ConnectionFactoryOptions.USER, username);
+        if (!password.isEmpty()) options.option(ConnectionFactoryOptions.PASSWORD, password);
+        final ConnectionFactory connectionFactory = ConnectionFactories.get(options.build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(connectionFactory)
+                .initialSize(0)
+                .maxSize(maxPoolSize)
+                .build());
+    }
+
+    @Bean
+    public TransactionalOperator reactiveTransactionalOperator(final ConnectionFactory reactiveConnectionFactory) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(reactiveConnectionFactory));
+    }
+
+    @Bean(destroyMethod = "close")
+    public KafkaSender<String, String> reactiveKafkaSender(@Value("${kafka.bootstrap-servers}") final String bootstrapServers,
+                                                           @Value("${kafka.producer.compressionType}") final String compressionType) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        config.put(ProducerConfig.COMPRESSION_TYPE_CONFIG, compressionType);
+        config.put(ProducerConfig.ENABLE_IDEMPOTENCE_CONFIG, true);
+        return KafkaSender.create(SenderOptions.create(config));
+    }
+
+    /**
+     * Acknowledged offsets are committed in the background every {@code reactive.commitIntervalMs}, and when
+     * partitions are revoked. A new consumer group starts from the earliest offsets, as the pipeline has a group of its
+     * own and duplicates of records processed by other consumers are rejected anyway.
+     */
+    @Bean
+    public ReceiverOptions<String, String> reactiveReceiverOptions(@Value("${kafka.bootstrap-servers}") final String bootstrapServers,
+                                                                   @Value("${kafka.consumer.maxPollIntervalMs}") final String maxPollIntervalMs,
+                                                                   @Value("${reactive.topics}") final String topics,
+                                                                   @Value("${reactive.groupId}") final String groupId,
+                                                                   @Value("${reactive.commitIntervalMs}") final long commitIntervalMs) {
+        final Map<String, Object> config = new HashMap<>();
+        config.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        config.put(ConsumerConfig.GROUP_ID_CONFIG, groupId);
+        config.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class);
+        config.put(ConsumerConfig.MAX_POLL_INTERVAL_MS_CONFIG, maxPollIntervalMs);
+        config.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return ReceiverOptions.<String, String>create(config)
+                .subscription(List.of(topics.split(",")))
+                .commitInterval(Duration.ofMillis(commitIntervalMs));
+    }
+}
@@ -0,0 +1,49 @@
+package demo.idempotentconsumer.configuration.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.kafka.listener.BatchInterceptor;
+import org.springframework.kafka.listener.RecordInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how long it takes from launching the JVM until the application is ready, and until the first record is
+ * handed to a listener. This is the number that matters when instances are added to work off lag.
+ */
+@Slf4j
+@Component
+public class StartupProbe implements RecordInterceptor<String, String>, BatchInterceptor<String, String> {
+
+    private final long launchedAt = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final AtomicBoolean firstRecordConsumed = new AtomicBoolean();
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        log.info("Startup: application ready {} ms after launch", System.currentTimeMillis() - launchedAt);
+    }
+
+    @Override
+    public ConsumerRecord<String, String> intercept(ConsumerRecord<String, String> record, Consumer<String, String> consumer) {
+        recordFirstConsumed();
+        return record;
+    }
+
+    @Override
+    public ConsumerRecords<String, String> intercept(ConsumerRecords<String, String> records, Consumer<String, String> consumer) {
+        recordFirstConsumed();
+        return records;
+    }
+
+    private void recordFirstConsumed() {
+        if (firstRecordConsumed.compareAndSet(false, true)) {
+            log.info("Startup: first record consumed {} ms after launch", System.currentTimeMillis() - launchedAt);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package demo.idempotentconsumer.configuration.startup;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+/**
+ * Exits the application as soon as it is ready when {@code startup.training-run} is set, so that a class-data sharing
+ * archive can be recorded of everything loaded during startup.
+ *
+ * The property is checked at runtime rather than through a condition, because conditions are evaluated at build time
+ * in the ahead-of-time processed build.
+ */
+@Slf4j
+@Component
+public class TrainingRun {
+
+    private final boolean enabled;
+
+    public TrainingRun(@Value("${startup.training-run:false}") boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @EventListener
+    public void onApplicationReady(ApplicationReadyEvent event) {
+        if (!enabled) return;
+
+        log.info("Training run complete, exiting");
+        System.exit(SpringApplication.exit(event.getApplicationContext()));
+    }
+}
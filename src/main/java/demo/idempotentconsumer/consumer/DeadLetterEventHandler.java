@@ -0,0 +1,46 @@
+package demo.idempotentconsumer.consumer;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Receives the records that exhausted their retries, or that failed with a non-retryable error, from the dead-letter
+ * topics of the inbound listeners. The failure metadata travels with the record as headers.
+ */
+@Slf4j
+@Component
+public class DeadLetterEventHandler {
+
+    public void handle(ConsumerRecord<String, String> record) {
+        log.error("Dead-lettered message from {}-{}@{} - key: {} - exception: {} (cause: {}): {} - payload: {}",
+                headerAsString(record, KafkaHeaders.ORIGINAL_TOPIC),
+                headerAsInt(record, KafkaHeaders.ORIGINAL_PARTITION),
+                headerAsLong(record, KafkaHeaders.ORIGINAL_OFFSET),
+                record.key(),
+                headerAsString(record, KafkaHeaders.EXCEPTION_FQCN),
+                headerAsString(record, KafkaHeaders.EXCEPTION_CAUSE_FQCN),
+                headerAsString(record, KafkaHeaders.EXCEPTION_MESSAGE),
+                record.value());
+    }
+
+    private static String headerAsString(ConsumerRecord<String, String> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    private static Integer headerAsInt(ConsumerRecord<String, String> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header != null ? ByteBuffer.wrap(header.value()).getInt() : null;
+    }
+
+    private static Long headerAsLong(ConsumerRecord<String, String> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header != null ? ByteBuffer.wrap(header.value()).getLong() : null;
+    }
+}
@@ -0,0 +1,56 @@
+package demo.idempotentconsumer.consumer;
+
+import demo.idempotentconsumer.service.AsyncOrderService;
+import demo.idempotentconsumer.service.ProcessedEventStore;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+
+/**
+ * Warms up the {@link ProcessedEventStore} state of the partitions assigned to this instance, and drops the state of
+ * the partitions revoked from it.
+ *
+ * Before the offsets of revoked partitions are committed and the partitions released, the events handed to
+ * {@link AsyncOrderService} are drained, so that their keys aren't processed here and by the new owner at once.
+ */
+@Component
+public class DeduplicationWarmUpListener implements ConsumerAwareRebalanceListener {
+
+    private final ProcessedEventStore processedEventStore;
+    private final AsyncOrderService asyncOrderService;
+
+    @Autowired
+    public DeduplicationWarmUpListener(ProcessedEventStore processedEventStore, AsyncOrderService asyncOrderService) {
+        this.processedEventStore = processedEventStore;
+        this.asyncOrderService = asyncOrderService;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        processedEventStore.onPartitionsAssigned(partitions);
+    }
+
+    @Override
+    public void onPartitionsRevokedBeforeCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (partitions.isEmpty()) return;
+        try {
+            asyncOrderService.drain();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void onPartitionsRevokedAfterCommit(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        processedEventStore.onPartitionsRevoked(partitions);
+    }
+
+    @Override
+    public void onPartitionsLost(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        processedEventStore.onPartitionsRevoked(partitions);
+    }
+}
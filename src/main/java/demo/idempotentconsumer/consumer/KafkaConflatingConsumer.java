@@ -0,0 +1,113 @@
+package demo.idempotentconsumer.consumer;
+
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.configuration.mapper.MappingException;
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
+import demo.idempotentconsumer.model.event.inbound.EventSources;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.service.OrderService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Idempotent consumer with outbox for last-write-wins topics, where only the latest value per key matters.
+ *
+ * Within each poll batch, records superseded by a newer valid record for the same key are only marked as processed,
+ * in bulk, once the record superseding them has been processed. Only the newest valid record per key writes a purchase
+ * order and an outbox event, and invalid records are dead-lettered as usual. Topics opt in to conflation by being
+ * listed in {@code kafka.conflation.topics}.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@Component
+public class KafkaConflatingConsumer {
+
+    final AtomicInteger counter = new AtomicInteger();
+    final OrderService orderService;
+    final RecordConflator recordConflator;
+
+    @KafkaListener(
+            id = "conflatingConsumer",
+            topics = "#{'${kafka.conflation.topics}'.split(',')}",
+            groupId = "kafkaConsumerGroup",
+            containerFactory = "kafkaBatchListenerContainerFactory"
+    )
+    public void listen(List<ConsumerRecord<String, String>> records) {
+        RecordConflator.ConflatedBatch batch = recordConflator.conflate(records, KafkaConflatingConsumer::isValid);
+        log.debug("Received batch of {} messages, {} left after conflation", records.size(), batch.getLatest().size());
+
+        List<ConsumerRecord<String, String>> processed = new ArrayList<>(batch.getLatest().size());
+        try {
+            for (ConsumerRecord<String, String> record : batch.getLatest()) {
+                processMessage(record);
+                processed.add(record);
+            }
+        } finally {
+            // Superseded records are skipped for good only once the record superseding them has been committed
+            markSuperseded(batch.supersededBy(processed));
+        }
+    }
+
+    private void markSuperseded(List<ConsumerRecord<String, String>> superseded) {
+        Map<UUID, TopicPartition> eventSources = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : superseded) {
+            try {
+                eventSources.put(EventIds.parse(eventId(record)), source(record));
+            } catch (InvalidEventException e) {
+                // A superseded record is never processed, so there is nothing to deduplicate.
+                log.debug("Dropping superseded message without valid event Id: {}", e.getMessage());
+            }
+        }
+        orderService.markProcessed(eventSources);
+    }
+
+    private void processMessage(ConsumerRecord<String, String> record) {
+        counter.getAndIncrement();
+        try {
+            UUID eventId = EventIds.parse(eventId(record));
+            log.debug("Processing message [{}] - eventId: {} - key: {} - payload: {}", counter.get(), eventId, record.key(), record.value());
+            InboundEvent event = JsonMapper.readFromJson(record.value(), InboundEvent.class);
+            orderService.processIdempotentAndOutbox(eventId, source(record), record.key(), event, false, false);
+        } catch (DuplicateEventException e) {
+            // Update consumer offsets to ensure event is not again redelivered. Duplicates are reported in aggregate.
+        } catch (RuntimeException e) {
+            // Lets the error handler commit the records before this one and retry from here.
+            throw new BatchListenerFailedException(e.getMessage(), e, record);
+        }
+    }
+
+    private static boolean isValid(ConsumerRecord<String, String> record) {
+        try {
+            EventIds.parse(eventId(record));
+            OrderService.validate(JsonMapper.readFromJson(record.value(), InboundEvent.class));
+            return true;
+        } catch (InvalidEventException | MappingException e) {
+            return false;
+        }
+    }
+
+    private static TopicPartition source(ConsumerRecord<String, String> record) {
+        return EventSources.of(record);
+    }
+
+    private static byte[] eventId(ConsumerRecord<String, String> record) {
+        Header header = record.headers().lastHeader(KafkaClient.EVENT_ID_HEADER_KEY);
+        return header != null ? header.value() : null;
+    }
+}
@@ -1,18 +1,22 @@
 package demo.idempotentconsumer.consumer;
 
 import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
+import demo.idempotentconsumer.model.event.inbound.EventSources;
 import demo.idempotentconsumer.model.event.inbound.InboundEvent;
 import demo.idempotentconsumer.configuration.mapper.JsonMapper;
 import demo.idempotentconsumer.exception.DuplicateEventException;
 import demo.idempotentconsumer.service.OrderService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.Payload;
 import org.springframework.stereotype.Component;
 
+import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 
 @Slf4j
@@ -30,11 +34,15 @@ public class KafkaIdempotentConsumerWithOutbox {
             containerFactory = "kafkaListenerContainerFactory"
     )
     public void listen(
-            @Header(KafkaClient.EVENT_ID_HEADER_KEY) String eventId,
+            @Header(KafkaClient.EVENT_ID_HEADER_KEY) byte[] eventId,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(name = KafkaHeaders.ORIGINAL_TOPIC, required = false) byte[] originalTopic,
+            @Header(name = KafkaHeaders.ORIGINAL_PARTITION, required = false) byte[] originalPartition,
             @Header(KafkaHeaders.RECEIVED_KEY) String key,
             @Payload final String payload
     ) {
-        processMessage(eventId, key, payload, false, false);
+        processMessage(eventId, EventSources.of(topic, partition, originalTopic, originalPartition), key, payload, false, false);
     }
 
     @KafkaListener(
@@ -43,30 +51,33 @@ public class KafkaIdempotentConsumerWithOutbox {
             containerFactory = "kafkaListenerContainerFactory"
     )
     public void listenAtomic(
-            @Header(KafkaClient.EVENT_ID_HEADER_KEY) String eventId,
+            @Header(KafkaClient.EVENT_ID_HEADER_KEY) byte[] eventId,
+            @Header(KafkaHeaders.RECEIVED_TOPIC) String topic,
+            @Header(KafkaHeaders.RECEIVED_PARTITION) int partition,
+            @Header(name = KafkaHeaders.ORIGINAL_TOPIC, required = false) byte[] originalTopic,
+            @Header(name = KafkaHeaders.ORIGINAL_PARTITION, required = false) byte[] originalPartition,
             @Header(KafkaHeaders.RECEIVED_KEY) String key,
             @Payload final String payload
     ) {
-        processMessage(eventId, key, payload, true, false);
+        processMessage(eventId, EventSources.of(topic, partition, originalTopic, originalPartition), key, payload, true, false);
     }
 
     private void processMessage(
-            String eventId,
+            byte[] eventIdHeader,
+            TopicPartition source,
             String key,
             String payload,
             boolean failDatabase,
             boolean delay
     ) {
         counterParallel.getAndIncrement();
-        log.debug("Received message [" +counterParallel.get()+ "] - eventId: "+ eventId +" - key: " + key + " - payload: " + payload);
+        UUID eventId = EventIds.parse(eventIdHeader);
+        log.debug("Received message [{}] - eventId: {} - key: {} - payload: {}", counterParallel.get(), eventId, key, payload);
         try {
             InboundEvent event = JsonMapper.readFromJson(payload, InboundEvent.class);
-            orderService.processIdempotentAndOutbox(eventId, event, failDatabase, delay);
+            orderService.processIdempotentAndOutbox(eventId, source, key, event, failDatabase, delay);
         } catch (DuplicateEventException e) {
-            // Update consumer offsets to ensure event is not again redelivered.
-            log.debug("Duplicate message received: "+ e.getMessage());
-        } catch (Exception e) {
-            log.error("Error processing message: " + e.getMessage());
+            // Update consumer offsets to ensure event is not again redelivered. Duplicates are reported in aggregate.
         }
     }
 }
@@ -45,15 +45,12 @@ public class KafkaNonIdempotentConsumer {
 
     private void processMessage(String key, String payload, boolean failDatabase, boolean delay) {
         counter.getAndIncrement();
-        log.debug("Received message [" +counter.get()+ "] - key: " + key + " - payload: " + payload);
+        log.debug("Received message [{}] - key: {} - payload: {}", counter.get(), key, payload);
         try {
             InboundEvent event = JsonMapper.readFromJson(payload, InboundEvent.class);
             orderService.processNonIdempotent(key, event, failDatabase, delay);
         } catch (DuplicateEventException e) {
-            // Update consumer offsets to ensure event is not again redelivered.
-            log.debug("Duplicate message received: "+ e.getMessage());
-        } catch (Exception e) {
-            log.error("Error processing message: " + e.getMessage());
+            // Update consumer offsets to ensure event is not again redelivered. Duplicates are reported in aggregate.
         }
     }
 }
@@ -0,0 +1,75 @@
+package demo.idempotentconsumer.consumer;
+
+import demo.idempotentconsumer.service.ReplayService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetAndTimestamp;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Replays inbound topics in large chunks, e.g. from an earlier point in time after an incident.
+ *
+ * Disabled unless {@code replay.enabled} is set. Replays run in their own consumer group, starting from
+ * {@code replay.from} if set, so they neither move nor depend on the offsets of the regular consumers. Partitions are
+ * only moved to {@code replay.from} while the group has no offset committed for them, so a replay interrupted by a
+ * rebalance or a restart resumes where it left off instead of starting over. The container is set up in
+ * {@code KafkaDemoConfiguration}, with this consumer as its rebalance listener.
+ */
+@Slf4j
+@Component
+public class KafkaReplayConsumer implements BatchMessageListener<String, String>, ConsumerAwareRebalanceListener {
+
+    private final ReplayService replayService;
+    private final String from;
+
+    @Autowired
+    public KafkaReplayConsumer(
+            ReplayService replayService,
+            @Value("${replay.from:}") String from
+    ) {
+        this.replayService = replayService;
+        this.from = from;
+    }
+
+    @Override
+    public void onMessage(List<ConsumerRecord<String, String>> records) {
+        log.debug("Received replay chunk of {} records", records.size());
+        replayService.replay(records);
+    }
+
+    @Override
+    public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+        if (from.isBlank() || partitions.isEmpty()) return;
+
+        long timestamp = Instant.parse(from).toEpochMilli();
+        Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(partitions));
+        Map<TopicPartition, Long> unstarted = new HashMap<>();
+        for (TopicPartition partition : partitions) {
+            if (committed.get(partition) == null) unstarted.put(partition, timestamp);
+        }
+        if (unstarted.isEmpty()) return;
+
+        log.info("Replaying {} from {}", unstarted.keySet(), from);
+        Map<TopicPartition, OffsetAndTimestamp> offsets = consumer.offsetsForTimes(unstarted);
+        for (TopicPartition partition : unstarted.keySet()) {
+            OffsetAndTimestamp offset = offsets.get(partition);
+            // Nothing was written since then
+            if (offset != null) consumer.seek(partition, offset.offset());
+            else consumer.seekToEnd(List.of(partition));
+        }
+    }
+}
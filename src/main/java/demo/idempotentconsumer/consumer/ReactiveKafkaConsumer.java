@@ -0,0 +1,229 @@
+package demo.idempotentconsumer.consumer;
+
+import demo.idempotentconsumer.configuration.deduplication.DeduplicationConfiguration.Backend;
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.configuration.mapper.MappingException;
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.service.ProcessedEventStore;
+import demo.idempotentconsumer.service.ReactiveOrderService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.header.internals.RecordHeaders;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.kafka.receiver.KafkaReceiver;
+import reactor.kafka.receiver.ReceiverOptions;
+import reactor.kafka.receiver.ReceiverPartition;
+import reactor.kafka.receiver.ReceiverRecord;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderRecord;
+import reactor.util.retry.Retry;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Consumes {@code reactive.topics} with the idempotent consumer (with outbox, if {@code reactive.outbox}), without
+ * blocking a thread per record in flight.
+ *
+ * Records are grouped by partition and each partition is processed one record after another, so records are
+ * processed and acknowledged in partition order, while all assigned partitions are processed concurrently. Concurrency
+ * is bounded by the partitions assigned and by the R2DBC pool: while a partition waits for a connection it requests no
+ * further records, and the receiver pauses fetching once its buffers are full.
+ *
+ * Processed events are recorded over R2DBC in the database, so the pipeline requires {@code deduplication.backend:
+ * database}. The recent event Ids of assigned partitions are loaded into the {@link ProcessedEventStore} as for the
+ * listener containers, so most redeliveries are rejected without a database round trip.
+ *
+ * Failed records are retried in place with the backoff of {@code kafka.retry}, which keeps them in order, and then
+ * published to {@code <topic>-dlt}. Invalid records skip the retries.
+ *
+ * On shutdown, fetching is paused and the records being processed are given {@code kafka.consumer.drainTimeoutMs} to
+ * complete, so that their offsets are committed when the consumer closes. Records fetched but not started yet are
+ * redelivered to the next owner of their partition.
+ */
+@Slf4j
+@Component
+public class ReactiveKafkaConsumer implements SmartLifecycle {
+
+    final AtomicInteger counter = new AtomicInteger();
+
+    private final ReceiverOptions<String, String> reactiveReceiverOptions;
+    private final KafkaSender<String, String> reactiveKafkaSender;
+    private final ReactiveOrderService reactiveOrderService;
+    private final ProcessedEventStore processedEventStore;
+    private final boolean enabled;
+    private final boolean outbox;
+    private final Retry retry;
+    private final Retry resubscribe;
+    private final Duration drainTimeout;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile KafkaReceiver<String, String> receiver;
+    private volatile Disposable subscription;
+
+    @Autowired
+    public ReactiveKafkaConsumer(
+            ReceiverOptions<String, String> reactiveReceiverOptions,
+            KafkaSender<String, String> reactiveKafkaSender,
+            ReactiveOrderService reactiveOrderService,
+            ProcessedEventStore processedEventStore,
+            @Value("${reactive.enabled}") boolean enabled,
+            @Value("${deduplication.backend}") Backend backend,
+            @Value("${reactive.outbox}") boolean outbox,
+            @Value("${kafka.retry.maxAttempts}") int maxAttempts,
+            @Value("${kafka.retry.initialIntervalMs}") long initialIntervalMs,
+            @Value("${kafka.retry.maxIntervalMs}") long maxIntervalMs,
+            @Value("${kafka.consumer.drainTimeoutMs}") long drainTimeoutMs
+    ) {
+        if (enabled && backend != Backend.DATABASE) {
+            throw new IllegalStateException("The reactive pipeline records processed events in the database, "
+                    + "it can't be enabled with deduplication.backend " + backend);
+        }
+        this.reactiveReceiverOptions = reactiveReceiverOptions;
+        this.reactiveKafkaSender = reactiveKafkaSender;
+        this.reactiveOrderService = reactiveOrderService;
+        this.processedEventStore = processedEventStore;
+        this.enabled = enabled;
+        this.outbox = outbox;
+        this.retry = Retry.backoff(maxAttempts - 1, Duration.ofMillis(initialIntervalMs))
+                .maxBackoff(Duration.ofMillis(maxIntervalMs))
+                .filter(ReactiveKafkaConsumer::isRetryable)
+                .onRetryExhaustedThrow((spec, signal) -> signal.failure());
+        this.resubscribe = Retry.backoff(Long.MAX_VALUE, Duration.ofMillis(initialIntervalMs))
+                .maxBackoff(Duration.ofMillis(maxIntervalMs))
+                .doBeforeRetry(signal -> log.warn("Reactive consumer failed, resubscribing", signal.failure()));
+        this.drainTimeout = Duration.ofMillis(drainTimeoutMs);
+    }
+
+    @Override
+    public void start() {
+        // Unacknowledged records are redelivered to the new consumer after a resubscription.
+        subscription = Flux.defer(() -> {
+                    receiver = KafkaReceiver.create(reactiveReceiverOptions
+                            .addAssignListener(partitions -> processedEventStore.onPartitionsAssigned(topicPartitions(partitions)))
+                            .addRevokeListener(partitions -> processedEventStore.onPartitionsRevoked(topicPartitions(partitions))));
+                    return receiver.receive();
+                })
+                .groupBy(record -> record.receiverOffset().topicPartition())
+                .flatMap(partition -> partition.concatMap(this::process), Integer.MAX_VALUE)
+                .retryWhen(resubscribe)
+                .subscribe();
+    }
+
+    @Override
+    public void stop() {
+        Disposable current = subscription;
+        if (current != null) current.dispose();
+        subscription = null;
+    }
+
+    /**
+     * Drains in the background, as the listener containers do, so that all consumers drain at the same time.
+     */
+    @Override
+    public void stop(Runnable callback) {
+        KafkaReceiver<String, String> current = receiver;
+        if (current == null || !isRunning()) {
+            stop();
+            callback.run();
+            return;
+        }
+        current.doOnConsumer(consumer -> {
+                    consumer.pause(consumer.assignment());
+                    return consumer.assignment().size();
+                })
+                .onErrorResume(e -> Mono.empty())
+                .thenMany(Flux.interval(Duration.ofMillis(50)))
+                .filter(tick -> inFlight.get() == 0)
+                .next()
+                .timeout(drainTimeout, Mono.fromRunnable(() ->
+                        log.warn("{} records still being processed after {}, abandoning them", inFlight.get(), drainTimeout)))
+                .doFinally(signal -> {
+                    stop();
+                    callback.run();
+                })
+                .subscribe();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return subscription != null && !subscription.isDisposed();
+    }
+
+    @Override
+    public boolean isAutoStartup() {
+        return enabled;
+    }
+
+    private Mono<Void> process(ReceiverRecord<String, String> record) {
+        TopicPartition source = record.receiverOffset().topicPartition();
+        inFlight.incrementAndGet();
+        return Mono.defer(() -> {
+                    UUID eventId = EventIds.parse(eventId(record));
+                    log.debug("Received message [{}] - eventId: {} - key: {} - payload: {}", counter.incrementAndGet(), eventId, record.key(), record.value());
+                    InboundEvent event = JsonMapper.readFromJson(record.value(), InboundEvent.class);
+                    return outbox
+                            ? reactiveOrderService.processIdempotentAndOutbox(eventId, source, record.key(), event)
+                            : reactiveOrderService.processIdempotent(eventId, source, record.key(), event);
+                })
+                .retryWhen(retry)
+                // Duplicates are reported in aggregate.
+                .onErrorResume(DuplicateEventException.class, e -> Mono.empty())
+                .onErrorResume(e -> deadLetter(record, e))
+                .doOnSuccess(done -> record.receiverOffset().acknowledge())
+                .doFinally(signal -> inFlight.decrementAndGet());
+    }
+
+    /**
+     * Publishes the record to the dead-letter topic, with the headers the dead-letter publishing of the listener
+     * containers adds.
+     */
+    private Mono<Void> deadLetter(ReceiverRecord<String, String> record, Throwable e) {
+        log.error("Dead-lettering record {}-{}@{}", record.topic(), record.partition(), record.offset(), e);
+        RecordHeaders headers = new RecordHeaders(record.headers().toArray());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_TOPIC, record.topic().getBytes(StandardCharsets.UTF_8));
+        headers.add(KafkaHeaders.DLT_ORIGINAL_PARTITION, ByteBuffer.allocate(Integer.BYTES).putInt(record.partition()).array());
+        headers.add(KafkaHeaders.DLT_ORIGINAL_OFFSET, ByteBuffer.allocate(Long.BYTES).putLong(record.offset()).array());
+        headers.add(KafkaHeaders.DLT_EXCEPTION_FQCN, e.getClass().getName().getBytes(StandardCharsets.UTF_8));
+        if (e.getMessage() != null) headers.add(KafkaHeaders.DLT_EXCEPTION_MESSAGE, e.getMessage().getBytes(StandardCharsets.UTF_8));
+        ProducerRecord<String, String> deadLetter =
+                new ProducerRecord<>(record.topic() + "-dlt", null, record.key(), record.value(), headers);
+        return reactiveKafkaSender.send(Mono.just(SenderRecord.create(deadLetter, null))).then();
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InvalidEventException || cause instanceof MappingException || cause instanceof DuplicateEventException) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<TopicPartition> topicPartitions(Collection<ReceiverPartition> partitions) {
+        return partitions.stream().map(ReceiverPartition::topicPartition).toList();
+    }
+
+    private static byte[] eventId(ReceiverRecord<String, String> record) {
+        Header header = record.headers().lastHeader(KafkaClient.EVENT_ID_HEADER_KEY);
+        return header != null ? header.value() : null;
+    }
+}
@@ -0,0 +1,70 @@
+package demo.idempotentconsumer.consumer;
+
+import lombok.Value;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * Collapses a poll batch of last-write-wins records to the newest record per key.
+ *
+ * Records without a key are never conflated, nor are records that fail validation: those neither supersede older
+ * records nor are superseded, so an invalid newest record doesn't cost the key its latest valid update. The surviving
+ * records keep their original (offset) order, so a batch error handler can still point at the failing record.
+ */
+@Component
+public class RecordConflator {
+
+    public ConflatedBatch conflate(List<ConsumerRecord<String, String>> records, Predicate<ConsumerRecord<String, String>> valid) {
+        Map<Object, ConsumerRecord<String, String>> latestByKey = new LinkedHashMap<>();
+        Map<ConsumerRecord<String, String>, List<ConsumerRecord<String, String>>> superseded = new IdentityHashMap<>();
+
+        for (ConsumerRecord<String, String> record : records) {
+            Object key = record.key() != null && valid.test(record)
+                    ? new PartitionKey(record.topic(), record.partition(), record.key())
+                    : record;
+            ConsumerRecord<String, String> previous = latestByKey.put(key, record);
+            if (previous != null) {
+                List<ConsumerRecord<String, String>> supersededByRecord = superseded.computeIfAbsent(record, r -> new ArrayList<>());
+                supersededByRecord.addAll(superseded.getOrDefault(previous, List.of()));
+                supersededByRecord.add(previous);
+                superseded.remove(previous);
+            }
+        }
+
+        List<ConsumerRecord<String, String>> latest = new ArrayList<>(latestByKey.values());
+        latest.sort(Comparator.<ConsumerRecord<String, String>, String>comparing(ConsumerRecord::topic)
+                .thenComparingInt(ConsumerRecord::partition)
+                .thenComparingLong(ConsumerRecord::offset));
+        return new ConflatedBatch(latest, superseded);
+    }
+
+    @Value
+    public static class ConflatedBatch {
+        List<ConsumerRecord<String, String>> latest;
+        Map<ConsumerRecord<String, String>, List<ConsumerRecord<String, String>>> superseded;
+
+        /**
+         * Returns the records superseded by the given surviving records.
+         */
+        public List<ConsumerRecord<String, String>> supersededBy(List<ConsumerRecord<String, String>> survivors) {
+            List<ConsumerRecord<String, String>> records = new ArrayList<>();
+            survivors.forEach(survivor -> records.addAll(superseded.getOrDefault(survivor, List.of())));
+            return records;
+        }
+    }
+
+    @Value
+    private static class PartitionKey {
+        String topic;
+        int partition;
+        String key;
+    }
+}
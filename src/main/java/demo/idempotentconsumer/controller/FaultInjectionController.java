@@ -0,0 +1,57 @@
+package demo.idempotentconsumer.controller;
+
+import demo.idempotentconsumer.configuration.faults.FaultInjector;
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import demo.idempotentconsumer.configuration.faults.FaultProfile;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.Map;
+
+/**
+ * Changes the injected faults while a load test is running. Not found unless fault injection is enabled.
+ */
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/faults")
+public class FaultInjectionController {
+
+    final FaultInjector faultInjector;
+
+    @GetMapping
+    public Map<Dependency, FaultProfile> getProfiles() {
+        requireEnabled();
+        return faultInjector.getProfiles();
+    }
+
+    @PutMapping("/{dependency}")
+    public void setProfile(@PathVariable Dependency dependency, @RequestBody FaultProfile profile) {
+        requireEnabled();
+        faultInjector.setProfile(dependency, profile);
+    }
+
+    @DeleteMapping
+    public void clear() {
+        requireEnabled();
+        faultInjector.clear();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    private void requireEnabled() {
+        if (!faultInjector.isEnabled()) throw new ResponseStatusException(HttpStatus.NOT_FOUND);
+    }
+}
@@ -0,0 +1,71 @@
+package demo.idempotentconsumer.controller;
+
+import demo.idempotentconsumer.model.domain.OrderSummary;
+import demo.idempotentconsumer.service.OrderAggregates;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Order counts per time window and key, served from memory by {@link OrderAggregates}.
+ */
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/orders/summary")
+public class OrderSummaryController {
+
+    private static final Duration DEFAULT_RANGE = Duration.ofHours(1);
+
+    final OrderAggregates orderAggregates;
+
+    /**
+     * Returns the counts of the windows starting within [from, to), by default the last hour, for the key or all keys.
+     * The order rate of a window is its count divided by {@code windowMs}.
+     */
+    @GetMapping
+    public OrderSummaryPage find(@RequestParam(required = false) Instant from,
+                                 @RequestParam(required = false) Instant to,
+                                 @RequestParam(required = false) String key) {
+        Instant end = to != null ? to : Instant.now();
+        Instant start = from != null ? from : end.minus(DEFAULT_RANGE);
+        if (!start.isBefore(end)) {
+            throw new IllegalArgumentException("From must be before to");
+        }
+        return new OrderSummaryPage(orderAggregates.getWindowMs(),
+                orderAggregates.find(start.toEpochMilli(), end.toEpochMilli(), key));
+    }
+
+    /**
+     * Recomputes the retained windows from the orders table, e.g. after an instance died with counts not yet flushed.
+     */
+    @PostMapping("/rebuild")
+    public int rebuild() {
+        return orderAggregates.rebuild();
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class OrderSummaryPage {
+        /** The length of each window, in milliseconds. */
+        private long windowMs;
+        private List<OrderSummary> windows;
+    }
+}
@@ -0,0 +1,85 @@
+package demo.idempotentconsumer.controller;
+
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.service.PurchaseOrderQueryService;
+import demo.idempotentconsumer.service.PurchaseOrderQueryService.PurchaseOrderPage;
+import demo.idempotentconsumer.service.PurchaseOrderQueryService.PurchaseOrderView;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Read API for purchase orders, so that downstream teams don't need to query the table directly.
+ */
+@Slf4j
+@RequiredArgsConstructor
+@RestController
+@RequestMapping("/orders")
+public class PurchaseOrderController {
+
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final MediaType APPLICATION_NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    final PurchaseOrderQueryService purchaseOrderQueryService;
+
+    @GetMapping("/{id}")
+    public PurchaseOrderView findById(@PathVariable UUID id) {
+        return purchaseOrderQueryService.findById(id)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Purchase order not found: " + id));
+    }
+
+    /**
+     * Pages through the orders in (timestamp, id) order. Pass the returned {@code nextCursor} as cursor to get the next page.
+     */
+    @GetMapping
+    public PurchaseOrderPage findPage(@RequestParam(required = false) String cursor,
+                                      @RequestParam(defaultValue = "100") int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        return purchaseOrderQueryService.findPage(cursor, limit);
+    }
+
+    /**
+     * Streams all orders as newline-delimited JSON, for exports too large to page through.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> export() {
+        StreamingResponseBody body = outputStream -> {
+            Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            purchaseOrderQueryService.export(order -> {
+                try {
+                    writer.write(JsonMapper.writeToJson(order));
+                    writer.write('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            writer.flush();
+        };
+        return ResponseEntity.ok().contentType(APPLICATION_NDJSON).body(body);
+    }
+
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<String> handleBadRequest(IllegalArgumentException e) {
+        return ResponseEntity.badRequest().body(e.getMessage());
+    }
+}
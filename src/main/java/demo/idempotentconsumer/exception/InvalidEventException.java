@@ -0,0 +1,11 @@
+package demo.idempotentconsumer.exception;
+
+/**
+ * Thrown when an inbound event can never be processed successfully, no matter how often it is retried.
+ * Events failing with this exception are sent straight to the dead-letter topic.
+ */
+public class InvalidEventException extends RuntimeException  {
+    public InvalidEventException(final String message) {
+        super("Invalid event: " + message);
+    }
+}
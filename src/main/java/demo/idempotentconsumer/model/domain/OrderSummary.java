@@ -0,0 +1,40 @@
+package demo.idempotentconsumer.model.domain;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/**
+ * The number of orders created within a time window for a key. Orders without a key are counted under the empty key.
+ */
+@Entity(name="OrderSummary")
+@IdClass(OrderSummary.Window.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+
+    @Id
+    private long windowStart;
+
+    @Id
+    @Column(nullable = false)
+    private String orderKey;
+
+    @Column(nullable = false)
+    private long orderCount;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Window implements Serializable {
+        private long windowStart;
+        private String orderKey;
+    }
+}
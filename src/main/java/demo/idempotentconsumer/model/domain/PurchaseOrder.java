@@ -4,6 +4,8 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +15,7 @@ import org.hibernate.annotations.GenericGenerator;
 import java.util.UUID;
 
 @Entity(name="PurchaseOrder")
+@Table(indexes = @Index(name = "purchase_order_timestamp_id_idx", columnList = "timestamp, id"))
 @Builder
 @Data
 @NoArgsConstructor
@@ -24,9 +27,18 @@ public class PurchaseOrder {
     @GenericGenerator(name = "uuid2", strategy = "uuid2")
     private UUID id;
 
-    @Column(nullable = false)
+    /**
+     * The payload, unless it is stored encoded in {@link #encodedPayload}.
+     */
     private String name;
 
+    private byte[] encodedPayload;
+
+    /**
+     * The key of the event the order was created from, if any.
+     */
+    private String orderKey;
+
     @Column(nullable = false)
     private long timestamp;
 }
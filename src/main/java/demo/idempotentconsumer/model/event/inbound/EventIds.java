@@ -0,0 +1,104 @@
+package demo.idempotentconsumer.model.event.inbound;
+
+import demo.idempotentconsumer.exception.InvalidEventException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+import java.util.UUID;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Parses the event Ids carried in the {@code KafkaClient.EVENT_ID_HEADER_KEY} header.
+ *
+ * The header holds either the 16 bytes of the Id, most significant bits first, or its canonical text form
+ * (8-4-4-4-12 hex digits). Both are parsed straight into the two longs of the {@link UUID}.
+ *
+ * The two forms are told apart by length alone, as the header carries no type. Any 16 byte header is therefore taken
+ * as a binary Id, including 16 characters of text that would otherwise be rejected as malformed: such an Id is still
+ * deduplicated consistently, just not under the Id its producer meant. Producers must send either form exactly.
+ */
+public final class EventIds {
+
+    public static final int BINARY_LENGTH = 16;
+    private static final int TEXT_LENGTH = 36;
+
+    private EventIds() {}
+
+    public static UUID parse(byte[] eventId) throws InvalidEventException {
+        if (eventId != null && eventId.length == BINARY_LENGTH) {
+            return new UUID(readLong(eventId, 0), readLong(eventId, 8));
+        }
+        UUID parsed = eventId != null ? parseText(i -> eventId[i], eventId.length) : null;
+        if (parsed == null) throw malformed(eventId);
+        return parsed;
+    }
+
+    public static UUID parse(String eventId) throws InvalidEventException {
+        UUID parsed = eventId != null ? parseText(eventId::charAt, eventId.length()) : null;
+        if (parsed == null) throw new InvalidEventException("malformed event Id: " + eventId);
+        return parsed;
+    }
+
+    /**
+     * Returns the 16 byte form of the Id, as accepted by {@link #parse(byte[])}.
+     */
+    public static byte[] toBytes(UUID eventId) {
+        byte[] bytes = new byte[BINARY_LENGTH];
+        writeLong(bytes, 0, eventId.getMostSignificantBits());
+        writeLong(bytes, 8, eventId.getLeastSignificantBits());
+        return bytes;
+    }
+
+    /**
+     * Parses the canonical text form, given its characters by index, or returns null if it's malformed.
+     */
+    private static UUID parseText(IntUnaryOperator charAt, int length) {
+        if (length != TEXT_LENGTH
+                || charAt.applyAsInt(8) != '-' || charAt.applyAsInt(13) != '-'
+                || charAt.applyAsInt(18) != '-' || charAt.applyAsInt(23) != '-') {
+            return null;
+        }
+        long msb = 0;
+        long lsb = 0;
+        for (int i = 0; i < TEXT_LENGTH; i++) {
+            if (i == 8 || i == 13 || i == 18 || i == 23) continue;
+            int digit = hexDigit(charAt.applyAsInt(i));
+            if (digit < 0) return null;
+            if (i < 18) {
+                msb = msb << 4 | digit;
+            } else {
+                lsb = lsb << 4 | digit;
+            }
+        }
+        return new UUID(msb, lsb);
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = offset; i < offset + 8; i++) {
+            value = value << 8 | (bytes[i] & 0xff);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = offset + 7; i >= offset; i--) {
+            bytes[i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static int hexDigit(int c) {
+        if (c >= '0' && c <= '9') return c - '0';
+        if (c >= 'a' && c <= 'f') return c - 'a' + 10;
+        if (c >= 'A' && c <= 'F') return c - 'A' + 10;
+        return -1;
+    }
+
+    private static InvalidEventException malformed(byte[] eventId) {
+        if (eventId == null) return new InvalidEventException("malformed event Id: null");
+        return new InvalidEventException("malformed event Id: " + (eventId.length == TEXT_LENGTH
+                ? new String(eventId, StandardCharsets.US_ASCII)
+                : "0x" + HexFormat.of().formatHex(eventId)));
+    }
+}
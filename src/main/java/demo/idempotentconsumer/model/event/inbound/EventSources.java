@@ -0,0 +1,56 @@
+package demo.idempotentconsumer.model.event.inbound;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Derives the source partition processed events are recorded under from the partition they were consumed from.
+ *
+ * Records consumed from the retry and dead-letter topics of an inbound topic ({@code <topic>-retry-N},
+ * {@code <topic>-dlt}) are recorded under the topic and partition of the original record, which the retry topics
+ * carry in the {@link KafkaHeaders#ORIGINAL_TOPIC} and {@link KafkaHeaders#ORIGINAL_PARTITION} headers. Retry topics
+ * don't have as many partitions as their inbound topic, so their own partition number says nothing about the original
+ * one. Their Ids then count towards the partition that is warmed up and deduplicated against when it is assigned.
+ */
+public final class EventSources {
+
+    private static final Pattern RETRY_TOPIC_SUFFIX = Pattern.compile("-(retry-\\d+|dlt)$");
+
+    private EventSources() {}
+
+    /**
+     * Returns the source of a record consumed from [topic] and [partition], with the values of its original topic and
+     * partition headers, which may be null.
+     */
+    public static TopicPartition of(String topic, int partition, byte[] originalTopic, byte[] originalPartition) {
+        if (isRetryTopic(topic) && originalTopic != null && originalPartition != null) {
+            return new TopicPartition(new String(originalTopic, StandardCharsets.UTF_8), ByteBuffer.wrap(originalPartition).getInt());
+        }
+        return new TopicPartition(inboundTopicOf(topic), partition);
+    }
+
+    public static TopicPartition of(ConsumerRecord<?, ?> record) {
+        return of(record.topic(), record.partition(),
+                headerValue(record, KafkaHeaders.ORIGINAL_TOPIC),
+                headerValue(record, KafkaHeaders.ORIGINAL_PARTITION));
+    }
+
+    public static String inboundTopicOf(String topic) {
+        return RETRY_TOPIC_SUFFIX.matcher(topic).replaceFirst("");
+    }
+
+    public static boolean isRetryTopic(String topic) {
+        return RETRY_TOPIC_SUFFIX.matcher(topic).find();
+    }
+
+    private static byte[] headerValue(ConsumerRecord<?, ?> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header != null ? header.value() : null;
+    }
+}
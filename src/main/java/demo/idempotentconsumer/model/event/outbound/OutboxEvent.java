@@ -6,6 +6,8 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -13,6 +15,11 @@ import lombok.NoArgsConstructor;
 import org.hibernate.annotations.GenericGenerator;
 
 @Entity(name="OutboxEvent")
+@Table(indexes = {
+        @Index(name = "outbox_event_timestamp_idx", columnList = "timestamp, id"),
+        @Index(name = "outbox_event_sequence_number_idx", columnList = "sequenceNumber"),
+        @Index(name = "outbox_event_transaction_id_idx", columnList = "transactionId, sequenceNumber")
+})
 @Builder
 @Data
 @NoArgsConstructor
@@ -26,9 +33,14 @@ public class OutboxEvent {
     @GenericGenerator(name = "uuid2", strategy = "uuid2")
     private UUID id;
 
-    @Column(nullable = false, length = VARCHAR_MAX_LENGTH)
+    /**
+     * The payload, unless it is stored encoded in {@link #encodedPayload}.
+     */
+    @Column(length = VARCHAR_MAX_LENGTH)
     private String payload;
 
+    private byte[] encodedPayload;
+
     @Column(nullable = false)
     private long timestamp;
 
@@ -36,4 +48,23 @@ public class OutboxEvent {
     private String destination;
 
     private String version;
+
+    /**
+     * Key of the aggregate the event belongs to. Events with the same key are published in order, and with this key.
+     */
+    private String aggregateKey;
+
+    /**
+     * The Id of the transaction that inserted the event, assigned by Postgres. Events are relayed in the order of their
+     * transaction, then of their sequence number. 0 on databases without transaction Ids.
+     */
+    @Column(insertable = false, updatable = false, columnDefinition = "bigint default 0 not null")
+    private Long transactionId;
+
+    /**
+     * Numbers the events in the order they were inserted. Assigned by the database, from the
+     * {@code outbox_event_sequence_number_seq} sequence.
+     */
+    @Column(insertable = false, updatable = false, columnDefinition = "bigint default nextval('outbox_event_sequence_number_seq') not null")
+    private Long sequenceNumber;
 }
@@ -0,0 +1,28 @@
+package demo.idempotentconsumer.model.event.outbound;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * The last outbox event published by a relay. Outbox events are relayed in (transaction Id, sequence number) order, so
+ * every event up to and including this one has been published.
+ */
+@Entity(name="OutboxRelayWatermark")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OutboxRelayWatermark {
+
+    @Id
+    private String relay;
+
+    @Column(nullable = false)
+    private long transactionId;
+
+    @Column(nullable = false)
+    private long sequenceNumber;
+}
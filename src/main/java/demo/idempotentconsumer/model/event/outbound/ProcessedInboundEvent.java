@@ -6,34 +6,60 @@ import java.util.UUID;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.Id;
-import jakarta.persistence.Transient;
-import org.springframework.data.domain.Persistable;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import org.hibernate.annotations.JdbcTypeCode;
+import org.hibernate.type.SqlTypes;
 
 @Entity(name="ProcessedInboundEvent")
-public class ProcessedInboundEvent implements Serializable, Persistable<UUID> {
+@Table(indexes = @Index(name = "processed_inbound_event_source_idx", columnList = "topic, source_partition, processed_at"))
+public class ProcessedInboundEvent implements Serializable {
 
+    /**
+     * Stored in a native uuid column, never as text or a serialized object.
+     */
     @Id
+    @JdbcTypeCode(SqlTypes.UUID)
     @Column(name="eventid")
     private UUID eventId;
 
+    /**
+     * The topic and partition the event was consumed from, if it was consumed from Kafka.
+     */
+    private String topic;
+
+    @Column(name="source_partition")
+    private Integer sourcePartition;
+
+    @Column(name="processed_at")
+    private Long processedAt;
+
     public ProcessedInboundEvent(){}
 
     public ProcessedInboundEvent(final UUID eventId) {
         this.eventId = eventId;
     }
 
-    @Transient
-    @Override
-    public UUID getId() {
+    public ProcessedInboundEvent(final UUID eventId, final String topic, final Integer sourcePartition, final long processedAt) {
+        this.eventId = eventId;
+        this.topic = topic;
+        this.sourcePartition = sourcePartition;
+        this.processedAt = processedAt;
+    }
+
+    public UUID getEventId() {
         return eventId;
     }
 
-    /**
-     * Ensures Hibernate always does an INSERT operation when save() is called.
-     */
-    @Transient
-    @Override
-    public boolean isNew() {
-        return true;
+    public String getTopic() {
+        return topic;
+    }
+
+    public Integer getSourcePartition() {
+        return sourcePartition;
+    }
+
+    public Long getProcessedAt() {
+        return processedAt;
     }
 }
@@ -0,0 +1,114 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Inserts the rows that are only ever appended: orders, outbox events and processed events.
+ *
+ * The rows are written with plain JDBC on the connection of the surrounding transaction, without a persistence
+ * context: no entity snapshots, no dirty checking on flush and no merge-or-persist decision per row. Each statement is
+ * executed right away, so a duplicate key surfaces at the insert as a {@link DuplicateKeyException}. The entities are
+ * only used to carry the columns; they aren't managed afterwards.
+ */
+@Repository
+public class AppendOnlyRepository {
+
+    private static final String INSERT_ORDER =
+            "insert into purchase_order (id, name, encoded_payload, timestamp, order_key) values (?, ?, ?, ?, ?)";
+
+    private static final String INSERT_OUTBOX_EVENT =
+            "insert into outbox_event (id, payload, encoded_payload, timestamp, destination, version, aggregate_key) " +
+                    "values (?, ?, ?, ?, ?, ?, ?)";
+
+    private static final String INSERT_PROCESSED_EVENT =
+            "insert into processed_inbound_event (eventid, topic, source_partition, processed_at) values (?, ?, ?, ?)";
+
+    private static final String INSERT_PROCESSED_EVENT_IF_ABSENT =
+            INSERT_PROCESSED_EVENT + " on conflict do nothing";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public AppendOnlyRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Inserts the order, and returns its Id, which is generated unless set.
+     */
+    public UUID insertOrder(PurchaseOrder order) {
+        UUID id = order.getId() != null ? order.getId() : UUID.randomUUID();
+        jdbcTemplate.update(INSERT_ORDER, ps -> {
+            ps.setObject(1, id);
+            ps.setString(2, order.getName());
+            ps.setBytes(3, order.getEncodedPayload());
+            ps.setLong(4, order.getTimestamp());
+            ps.setString(5, order.getOrderKey());
+        });
+        return id;
+    }
+
+    /**
+     * Inserts the outbox event, and returns its Id, which is generated unless set.
+     */
+    public UUID insertOutboxEvent(OutboxEvent event) {
+        UUID id = event.getId() != null ? event.getId() : UUID.randomUUID();
+        jdbcTemplate.update(INSERT_OUTBOX_EVENT, ps -> {
+            ps.setObject(1, id);
+            ps.setString(2, event.getPayload());
+            ps.setBytes(3, event.getEncodedPayload());
+            ps.setLong(4, event.getTimestamp());
+            ps.setString(5, event.getDestination());
+            ps.setString(6, event.getVersion());
+            ps.setString(7, event.getAggregateKey());
+        });
+        return id;
+    }
+
+    /**
+     * Inserts the processed event.
+     *
+     * @throws DuplicateKeyException if the event was processed already
+     */
+    public void insertProcessedEvent(ProcessedInboundEvent event) throws DuplicateKeyException {
+        jdbcTemplate.update(INSERT_PROCESSED_EVENT, ps -> {
+            ps.setObject(1, event.getEventId());
+            ps.setString(2, event.getTopic());
+            ps.setObject(3, event.getSourcePartition(), Types.INTEGER);
+            ps.setObject(4, event.getProcessedAt(), Types.BIGINT);
+        });
+    }
+
+    /**
+     * Inserts the processed events in one batch, skipping those processed already, and returns how many were inserted.
+     *
+     * Events recorded concurrently by another transaction are skipped once it commits, instead of failing the batch.
+     * Rows are inserted in Id order, so that concurrent batches lock them in the same order and can't deadlock.
+     */
+    public int insertProcessedEventsIfAbsent(List<ProcessedInboundEvent> events) {
+        if (events.isEmpty()) return 0;
+        List<ProcessedInboundEvent> sorted = events.stream()
+                .sorted(Comparator.comparing(ProcessedInboundEvent::getEventId))
+                .toList();
+        int[][] counts = jdbcTemplate.batchUpdate(INSERT_PROCESSED_EVENT_IF_ABSENT, sorted, sorted.size(), (ps, event) -> {
+            ps.setObject(1, event.getEventId());
+            ps.setString(2, event.getTopic());
+            ps.setObject(3, event.getSourcePartition(), Types.INTEGER);
+            ps.setObject(4, event.getProcessedAt(), Types.BIGINT);
+        });
+        return Arrays.stream(counts).flatMapToInt(Arrays::stream).filter(count -> count > 0).sum();
+    }
+}
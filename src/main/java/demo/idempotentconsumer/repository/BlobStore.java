@@ -0,0 +1,14 @@
+package demo.idempotentconsumer.repository;
+
+/**
+ * Content-addressed storage for payloads too large to be kept inline in table rows and Kafka messages.
+ */
+public interface BlobStore {
+
+    /**
+     * Stores the content, unless content with the same hash is already stored, and returns its hash.
+     */
+    String put(byte[] content);
+
+    byte[] get(String hash);
+}
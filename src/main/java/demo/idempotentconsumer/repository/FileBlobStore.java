@@ -0,0 +1,107 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.exception.InvalidEventException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Repository;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Stores blobs as files on the local file system, named after the SHA-256 hash of their content.
+ *
+ * Blobs are immutable, so they are written once through a temporary file and an atomic move, and read through a
+ * memory-mapped buffer.
+ *
+ * Hashes come from references in rows and messages, so anything but a SHA-256 hash is rejected before it is resolved
+ * to a path, and the path must stay within the directory.
+ */
+@Slf4j
+@Repository
+public class FileBlobStore implements BlobStore {
+
+    private static final Pattern HASH = Pattern.compile("^[0-9a-f]{64}$");
+
+    private final Path directory;
+
+    @Autowired
+    public FileBlobStore(@Value("${claim-check.directory}") String directory) {
+        this.directory = Paths.get(directory).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String put(byte[] content) {
+        String hash = sha256(content);
+        Path path = pathOf(hash);
+        if (Files.exists(path)) return hash;
+
+        Path temporary = null;
+        try {
+            Files.createDirectories(path.getParent());
+            temporary = Files.createTempFile(path.getParent(), hash, ".tmp");
+            Files.write(temporary, content);
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+            log.debug("Blob stored with hash: {}", hash);
+            return hash;
+        } catch (IOException e) {
+            if (Files.exists(path)) return hash; // Stored concurrently with the same content.
+            throw new UncheckedIOException("Failed to store blob " + hash, e);
+        } finally {
+            deleteQuietly(temporary);
+        }
+    }
+
+    @Override
+    public byte[] get(String hash) {
+        try (FileChannel channel = FileChannel.open(pathOf(hash), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] content = new byte[buffer.remaining()];
+            buffer.get(content);
+            return content;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read blob " + hash, e);
+        }
+    }
+
+    private static void deleteQuietly(Path temporary) {
+        if (temporary == null) return;
+        try {
+            Files.deleteIfExists(temporary);
+        } catch (IOException e) {
+            log.warn("Failed to delete temporary blob file {}", temporary, e);
+        }
+    }
+
+    private Path pathOf(String hash) {
+        if (hash == null || !HASH.matcher(hash).matches()) {
+            throw new InvalidEventException("malformed blob hash: " + hash);
+        }
+        // Fan out over sub-directories to keep directory sizes manageable.
+        Path path = directory.resolve(hash.substring(0, 2)).resolve(hash).normalize();
+        if (!path.startsWith(directory)) {
+            throw new InvalidEventException("blob hash outside of the blob store: " + hash);
+        }
+        return path;
+    }
+
+    private static String sha256(byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.model.domain.OrderSummary;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes the order summary, and recomputes it from the orders.
+ */
+@Repository
+public class OrderSummaryRepository {
+
+    private static final String ADD_TO_COUNT =
+            "update order_summary set order_count = order_count + ? where window_start = ? and order_key = ?";
+
+    private static final String INSERT_COUNT =
+            "insert into order_summary (window_start, order_key, order_count) values (?, ?, ?)";
+
+    private static final String SELECT_SINCE =
+            "select window_start, order_key, order_count from order_summary where window_start >= ?";
+
+    private static final String DELETE_SINCE =
+            "delete from order_summary where window_start >= ?";
+
+    // Served by purchase_order_timestamp_id_idx
+    private static final String COUNT_ORDERS_SINCE =
+            "select window_start, order_key, count(*) as order_count from (" +
+                    "  select (timestamp / ?) * ? as window_start, coalesce(order_key, '') as order_key" +
+                    "  from purchase_order where timestamp >= ?" +
+                    ") o group by window_start, order_key";
+
+    private static final RowMapper<OrderSummary> ROW_MAPPER = (rs, rowNum) -> new OrderSummary(
+            rs.getLong("window_start"),
+            rs.getString("order_key"),
+            rs.getLong("order_count")
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public OrderSummaryRepository(DataSource dataSource) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Adds the counts to those of their windows. Several instances may add to the same window, so counts are
+     * incremented in place, and only inserted for windows that have no row yet. If another instance inserts the same
+     * window first, the transaction fails on its primary key and nothing is added.
+     */
+    @Transactional
+    public void addCounts(List<OrderSummary> counts) {
+        if (counts.isEmpty()) return;
+        int[][] updated = jdbcTemplate.batchUpdate(ADD_TO_COUNT, counts, counts.size(), (ps, count) -> {
+            ps.setLong(1, count.getOrderCount());
+            ps.setLong(2, count.getWindowStart());
+            ps.setString(3, count.getOrderKey());
+        });
+        List<OrderSummary> missing = new ArrayList<>();
+        for (int i = 0; i < counts.size(); i++) {
+            if (updated[0][i] == 0) missing.add(counts.get(i));
+        }
+        insert(missing);
+    }
+
+    public List<OrderSummary> findSince(long windowStart) {
+        return jdbcTemplate.query(SELECT_SINCE, ROW_MAPPER, windowStart);
+    }
+
+    /**
+     * Recomputes the counts of the windows starting at or after the given one from the orders, replaces those windows
+     * with them, and returns them.
+     */
+    @Transactional
+    public List<OrderSummary> rebuildSince(long windowStart, long windowMs) {
+        List<OrderSummary> counts = jdbcTemplate.query(COUNT_ORDERS_SINCE, ROW_MAPPER, windowMs, windowMs, windowStart);
+        jdbcTemplate.update(DELETE_SINCE, windowStart);
+        insert(counts);
+        return counts;
+    }
+
+    private void insert(List<OrderSummary> counts) {
+        if (counts.isEmpty()) return;
+        jdbcTemplate.batchUpdate(INSERT_COUNT, counts, counts.size(), (ps, count) -> {
+            ps.setLong(1, count.getWindowStart());
+            ps.setString(2, count.getOrderKey());
+            ps.setLong(3, count.getOrderCount());
+        });
+    }
+}
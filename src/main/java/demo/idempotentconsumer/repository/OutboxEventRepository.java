@@ -1,9 +1,35 @@
 package demo.idempotentconsumer.repository;
 
 import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.util.List;
 import java.util.UUID;
 
 public interface OutboxEventRepository extends JpaRepository<OutboxEvent, UUID> {
+
+    /**
+     * Returns the events after the given (transaction Id, sequence number) watermark, of transactions before
+     * [visibleBefore] and older than [settledBefore], in (transaction Id, sequence number) order.
+     */
+    @Query("select e from OutboxEvent e " +
+            "where (e.transactionId > :transactionId or (e.transactionId = :transactionId and e.sequenceNumber > :sequenceNumber)) " +
+            "and e.transactionId < :visibleBefore " +
+            "and e.timestamp < :settledBefore " +
+            "order by e.transactionId, e.sequenceNumber")
+    List<OutboxEvent> findAfter(@Param("transactionId") long transactionId,
+                                @Param("sequenceNumber") long sequenceNumber,
+                                @Param("visibleBefore") long visibleBefore,
+                                @Param("settledBefore") long settledBefore,
+                                Pageable pageable);
+
+    /**
+     * Returns the Id of the oldest transaction still running. Transactions before it have all committed or rolled back,
+     * so their events are visible and no more are added. Requires Postgres.
+     */
+    @Query(value = "select pg_snapshot_xmin(pg_current_snapshot())::text::bigint", nativeQuery = true)
+    long findVisibleBefore();
 }
@@ -0,0 +1,76 @@
+package demo.idempotentconsumer.repository;
+
+import lombok.Value;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Manages the time-range partitions of the Postgres outbox table.
+ */
+@Repository
+public class OutboxPartitionRepository {
+
+    private static final String FIND_PARTITIONS =
+            "select c.relname, pg_get_expr(c.relpartbound, c.oid) from pg_inherits i " +
+                    "join pg_class c on c.oid = i.inhrelid " +
+                    "where i.inhparent = 'outbox_event'::regclass";
+
+    /**
+     * Matches the upper bound of a partition bound expression like {@code FOR VALUES FROM (MINVALUE) TO ('1697760000000')}.
+     */
+    private static final Pattern UPPER_BOUND = Pattern.compile("TO \\('?(-?\\d+)'?\\)");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public OutboxPartitionRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public List<OutboxPartition> findPartitions() {
+        return jdbcTemplate.query(FIND_PARTITIONS, (rs, rowNum) -> {
+            Matcher upperBound = UPPER_BOUND.matcher(rs.getString(2));
+            return new OutboxPartition(rs.getString(1), upperBound.find() ? Long.valueOf(upperBound.group(1)) : null);
+        });
+    }
+
+    /**
+     * Creates the partition holding timestamps from [from] inclusive to [to] exclusive, unless it exists.
+     */
+    public void createPartition(String name, long from, long to) {
+        jdbcTemplate.execute("create table if not exists " + name + " partition of outbox_event " +
+                "for values from (" + from + ") to (" + to + ")");
+    }
+
+    /**
+     * Returns whether the partition holds events after the given (transaction Id, sequence number) watermark.
+     */
+    public boolean hasEventsAfter(String name, long transactionId, long sequenceNumber) {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("select exists (select 1 from " + name + " " +
+                        "where transaction_id > ? or (transaction_id = ? and sequence_number > ?))",
+                Boolean.class, transactionId, transactionId, sequenceNumber));
+    }
+
+    /**
+     * Detaches the partition without blocking inserts into the other partitions, then drops it. Must not be called
+     * within a transaction.
+     */
+    public void dropPartition(String name) {
+        jdbcTemplate.execute("alter table outbox_event detach partition " + name + " concurrently");
+        jdbcTemplate.execute("drop table " + name);
+    }
+
+    @Value
+    public static class OutboxPartition {
+        String name;
+        /**
+         * The exclusive upper bound of the partition's timestamps, or null if it is unbounded.
+         */
+        Long upperBound;
+    }
+}
@@ -0,0 +1,7 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.model.event.outbound.OutboxRelayWatermark;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface OutboxRelayWatermarkRepository extends JpaRepository<OutboxRelayWatermark, String> {
+}
@@ -1,11 +1,26 @@
 package demo.idempotentconsumer.repository;
 
+import java.util.List;
 import java.util.UUID;
 
 import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
 public interface ProcessedEventRepository extends JpaRepository<ProcessedInboundEvent, UUID> {
+
+    /**
+     * Returns the Ids of the events consumed from the given partition since the given time, most recent first.
+     */
+    @Query("select e.eventId from ProcessedInboundEvent e " +
+            "where e.topic = :topic and e.sourcePartition = :partition and e.processedAt >= :since " +
+            "order by e.processedAt desc")
+    List<UUID> findRecentEventIds(@Param("topic") String topic,
+                                  @Param("partition") int partition,
+                                  @Param("since") long since,
+                                  Pageable pageable);
 }
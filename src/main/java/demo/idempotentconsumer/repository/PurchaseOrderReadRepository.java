@@ -0,0 +1,100 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Read-only queries on purchase orders, served from the read connection pool rather than the one processing events.
+ */
+@Repository
+public class PurchaseOrderReadRepository {
+
+    private static final int EXPORT_FETCH_SIZE = 1000;
+
+    private static final RowMapper<PurchaseOrder> ROW_MAPPER = (rs, rowNum) -> PurchaseOrder.builder()
+            .id(rs.getObject("id", UUID.class))
+            .name(rs.getString("name"))
+            .encodedPayload(rs.getBytes("encoded_payload"))
+            .timestamp(rs.getLong("timestamp"))
+            .build();
+
+    private final NamedParameterJdbcTemplate readJdbcTemplate;
+    private final JdbcTemplate exportJdbcTemplate;
+    private final TransactionTemplate exportTransactionTemplate;
+
+    @Autowired
+    public PurchaseOrderReadRepository(
+            @Qualifier("readJdbcTemplate") NamedParameterJdbcTemplate readJdbcTemplate,
+            @Qualifier("readDataSource") DataSource readDataSource
+    ) {
+        this.readJdbcTemplate = readJdbcTemplate;
+        this.exportJdbcTemplate = new JdbcTemplate(readDataSource);
+        this.exportJdbcTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+        // Postgres only streams results with a fetch size inside a transaction.
+        this.exportTransactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(readDataSource));
+        this.exportTransactionTemplate.setReadOnly(true);
+    }
+
+    public Optional<PurchaseOrder> findById(UUID id) {
+        return readJdbcTemplate.query(
+                "select id, name, encoded_payload, timestamp from purchase_order where id = :id",
+                new MapSqlParameterSource("id", id),
+                ROW_MAPPER
+        ).stream().findFirst();
+    }
+
+    /**
+     * Returns the first orders in (timestamp, id) order.
+     */
+    public List<PurchaseOrder> findFirst(int limit) {
+        return readJdbcTemplate.query(
+                "select id, name, encoded_payload, timestamp from purchase_order " +
+                        "order by timestamp, id limit :limit",
+                new MapSqlParameterSource("limit", limit),
+                ROW_MAPPER
+        );
+    }
+
+    /**
+     * Returns the orders following the given (timestamp, id) position in (timestamp, id) order. Unlike an offset, the
+     * position is found through the index, so late pages are as cheap as the first one.
+     */
+    public List<PurchaseOrder> findAfter(long timestamp, UUID id, int limit) {
+        return readJdbcTemplate.query(
+                "select id, name, encoded_payload, timestamp from purchase_order " +
+                        "where (timestamp, id) > (:timestamp, :id) " +
+                        "order by timestamp, id limit :limit",
+                new MapSqlParameterSource()
+                        .addValue("timestamp", timestamp)
+                        .addValue("id", id)
+                        .addValue("limit", limit),
+                ROW_MAPPER
+        );
+    }
+
+    /**
+     * Streams all orders in (timestamp, id) order to the consumer, without holding them all in memory.
+     */
+    public void streamAll(Consumer<PurchaseOrder> consumer) {
+        exportTransactionTemplate.executeWithoutResult(status -> exportJdbcTemplate.query(
+                "select id, name, encoded_payload, timestamp from purchase_order order by timestamp, id",
+                rs -> {
+                    consumer.accept(ROW_MAPPER.mapRow(rs, 0));
+                }
+        ));
+    }
+}
@@ -0,0 +1,87 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import io.r2dbc.spi.ConnectionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+import java.util.UUID;
+
+/**
+ * The inserts of {@link AppendOnlyRepository}, over a non-blocking R2DBC connection. Statements join the reactive
+ * transaction of the subscriber, if any.
+ */
+@Repository
+public class ReactiveAppendOnlyRepository {
+
+    private static final String INSERT_ORDER =
+            "insert into purchase_order (id, name, encoded_payload, timestamp, order_key) " +
+                    "values (:id, :name, :encodedPayload, :timestamp, :orderKey)";
+
+    private static final String INSERT_OUTBOX_EVENT =
+            "insert into outbox_event (id, payload, encoded_payload, timestamp, destination, version, aggregate_key) " +
+                    "values (:id, :payload, :encodedPayload, :timestamp, :destination, :version, :aggregateKey)";
+
+    private static final String INSERT_PROCESSED_EVENT =
+            "insert into processed_inbound_event (eventid, topic, source_partition, processed_at) " +
+                    "values (:eventId, :topic, :sourcePartition, :processedAt)";
+
+    private final DatabaseClient databaseClient;
+
+    @Autowired
+    public ReactiveAppendOnlyRepository(ConnectionFactory connectionFactory) {
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+    }
+
+    /**
+     * Inserts the order, and emits its Id, which is generated unless set.
+     */
+    public Mono<UUID> insertOrder(PurchaseOrder order) {
+        UUID id = order.getId() != null ? order.getId() : UUID.randomUUID();
+        GenericExecuteSpec spec = databaseClient.sql(INSERT_ORDER)
+                .bind("id", id)
+                .bind("timestamp", order.getTimestamp());
+        spec = bindNullable(spec, "name", order.getName(), String.class);
+        spec = bindNullable(spec, "encodedPayload", order.getEncodedPayload(), byte[].class);
+        spec = bindNullable(spec, "orderKey", order.getOrderKey(), String.class);
+        return spec.then().thenReturn(id);
+    }
+
+    /**
+     * Inserts the outbox event, and emits its Id, which is generated unless set.
+     */
+    public Mono<UUID> insertOutboxEvent(OutboxEvent event) {
+        UUID id = event.getId() != null ? event.getId() : UUID.randomUUID();
+        GenericExecuteSpec spec = databaseClient.sql(INSERT_OUTBOX_EVENT)
+                .bind("id", id)
+                .bind("timestamp", event.getTimestamp())
+                .bind("destination", event.getDestination());
+        spec = bindNullable(spec, "payload", event.getPayload(), String.class);
+        spec = bindNullable(spec, "encodedPayload", event.getEncodedPayload(), byte[].class);
+        spec = bindNullable(spec, "version", event.getVersion(), String.class);
+        spec = bindNullable(spec, "aggregateKey", event.getAggregateKey(), String.class);
+        return spec.then().thenReturn(id);
+    }
+
+    /**
+     * Inserts the processed event, and signals a {@link DuplicateKeyException} if the event was processed already.
+     */
+    public Mono<Void> insertProcessedEvent(ProcessedInboundEvent event) {
+        GenericExecuteSpec spec = databaseClient.sql(INSERT_PROCESSED_EVENT)
+                .bind("eventId", event.getEventId());
+        spec = bindNullable(spec, "topic", event.getTopic(), String.class);
+        spec = bindNullable(spec, "sourcePartition", event.getSourcePartition(), Integer.class);
+        spec = bindNullable(spec, "processedAt", event.getProcessedAt(), Long.class);
+        return spec.then();
+    }
+
+    private static GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name, Object value, Class<?> type) {
+        return value != null ? spec.bind(name, value) : spec.bindNull(name, type);
+    }
+}
@@ -0,0 +1,153 @@
+package demo.idempotentconsumer.repository;
+
+import lombok.Builder;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.StringReader;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Bulk replay of inbound events into Postgres.
+ *
+ * A chunk of events is streamed into a temporary staging table with COPY, deduplicated against the processed events in
+ * a single set-based statement, and only the new events write an order and an outbox event. Events known to be
+ * processed can be filtered out beforehand with {@link #findProcessedEventIds}, but the insert doesn't rely on it.
+ * Must be called within a transaction, which the staging table lives as long as.
+ */
+@Slf4j
+@Repository
+public class ReplayRepository {
+
+    private static final String CREATE_STAGING_TABLE =
+            "create temporary table if not exists replay_staging (" +
+                    "seq bigint not null, " +
+                    "event_id uuid not null, " +
+                    "topic varchar(255), " +
+                    "source_partition integer, " +
+                    "msg_key text, " +
+                    "payload text, " +
+                    "encoded_payload bytea" +
+                    ") on commit drop";
+
+    private static final String COPY_INTO_STAGING_TABLE =
+            "copy replay_staging (seq, event_id, topic, source_partition, msg_key, payload, encoded_payload) " +
+                    "from stdin with (format csv)";
+
+    private static final String FIND_PROCESSED_EVENT_IDS =
+            "select eventid from processed_inbound_event where eventid = any(?)";
+
+    /**
+     * Rows are inserted in the order the events were consumed in ({@code seq}), so that outbox events get their sequence
+     * numbers, and are relayed, in that order.
+     */
+    private static final String INSERT_NEW_EVENTS =
+            "with staged as (" +
+                    "  select distinct on (event_id) * from replay_staging order by event_id, seq" +
+                    "), new_events as (" +
+                    "  insert into processed_inbound_event (eventid, topic, source_partition, processed_at)" +
+                    "  select event_id, topic, source_partition, ? from staged order by seq" +
+                    "  on conflict (eventid) do nothing" +
+                    "  returning eventid" +
+                    "), new_orders as (" +
+                    "  insert into purchase_order (id, name, encoded_payload, timestamp, order_key)" +
+                    "  select gen_random_uuid(), s.payload, s.encoded_payload, ?, s.msg_key from staged s join new_events n on n.eventid = s.event_id" +
+                    "  order by s.seq" +
+                    ") " +
+                    "insert into outbox_event (id, payload, encoded_payload, timestamp, destination, version, aggregate_key) " +
+                    "select gen_random_uuid(), s.payload, s.encoded_payload, ?, ?, 'v1', s.msg_key from staged s join new_events n on n.eventid = s.event_id " +
+                    "order by s.seq " +
+                    "returning aggregate_key";
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public ReplayRepository(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+    }
+
+    /**
+     * Returns those of the given event Ids that were processed already.
+     */
+    public Set<UUID> findProcessedEventIds(Collection<UUID> eventIds) {
+        return new HashSet<>(jdbcTemplate.query(FIND_PROCESSED_EVENT_IDS,
+                ps -> ps.setArray(1, ps.getConnection().createArrayOf("uuid", eventIds.toArray())),
+                (rs, rowNum) -> rs.getObject(1, UUID.class)));
+    }
+
+    /**
+     * Inserts the events that weren't processed yet, all with the given timestamp, and returns their keys.
+     */
+    public List<String> insertNewEvents(List<StagedEvent> events, String outboxDestination, long timestamp) {
+        jdbcTemplate.execute(CREATE_STAGING_TABLE);
+        copyIntoStagingTable(events);
+
+        return jdbcTemplate.queryForList(INSERT_NEW_EVENTS, String.class, timestamp, timestamp, timestamp, outboxDestination);
+    }
+
+    private void copyIntoStagingTable(List<StagedEvent> events) {
+        StringBuilder csv = new StringBuilder(events.size() * 128);
+        for (int seq = 0; seq < events.size(); seq++) {
+            StagedEvent event = events.get(seq);
+            csv.append(seq).append(',')
+                    .append(event.getEventId()).append(',');
+            appendCsvText(csv, event.getTopic());
+            csv.append(',');
+            if (event.getSourcePartition() != null) csv.append(event.getSourcePartition());
+            csv.append(',');
+            appendCsvText(csv, event.getKey());
+            csv.append(',');
+            appendCsvText(csv, event.getPayload());
+            csv.append(',');
+            if (event.getEncodedPayload() != null) csv.append("\\x").append(HexFormat.of().formatHex(event.getEncodedPayload()));
+            csv.append('\n');
+        }
+
+        // The transaction's connection, so the rows are visible to the statements that follow.
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        try {
+            long copied = connection.unwrap(PGConnection.class).getCopyAPI()
+                    .copyIn(COPY_INTO_STAGING_TABLE, new StringReader(csv.toString()));
+            log.debug("Copied {} events into the replay staging table", copied);
+        } catch (SQLException | IOException e) {
+            throw new IllegalStateException("Failed to copy events into the replay staging table", e);
+        } finally {
+            DataSourceUtils.releaseConnection(connection, dataSource);
+        }
+    }
+
+    /**
+     * Quotes text so that it is never confused with a null, which is an unquoted empty value in CSV.
+     */
+    private static void appendCsvText(StringBuilder csv, String text) {
+        if (text == null) return;
+        csv.append('"').append(text.replace("\"", "\"\"")).append('"');
+    }
+
+    @Value
+    @Builder
+    public static class StagedEvent {
+        UUID eventId;
+        String topic;
+        Integer sourcePartition;
+        String key;
+        String payload;
+        byte[] encodedPayload;
+    }
+}
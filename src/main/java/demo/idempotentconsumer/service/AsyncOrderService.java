@@ -1,53 +1,101 @@
 package demo.idempotentconsumer.service;
 
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
 import demo.idempotentconsumer.model.event.inbound.InboundEvent;
-import lombok.RequiredArgsConstructor;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.scheduling.annotation.Async;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Processes events asynchronously, on all cores, while events with the same key are processed one after another in
+ * the order they were handed in.
+ *
+ * On shutdown, events handed in already are drained for up to {@code async.drainTimeoutMs} before the database and
+ * Kafka clients are closed, and likewise when partitions are revoked from this instance.
+ */
 @Service
 @Slf4j
-@RequiredArgsConstructor
-public class AsyncOrderService {;
+public class AsyncOrderService {
 
-    private OrderService orderService;
+    private final OrderService orderService;
+    private final KeyedSerialExecutor executor;
+    private final long drainTimeoutMs;
 
     @Autowired
     public AsyncOrderService(
-            OrderService orderService
+            OrderService orderService,
+            @Value("${async.threads:#{T(java.lang.Runtime).getRuntime().availableProcessors()}}") int threads,
+            @Value("${async.stripes}") int stripes,
+            @Value("${async.drainTimeoutMs}") long drainTimeoutMs
     ) {
         this.orderService = orderService;
+        this.executor = new KeyedSerialExecutor("async-order", threads, stripes);
+        this.drainTimeoutMs = drainTimeoutMs;
     }
 
-    @Async
     public void processNonIdempotentAsync(
             String key,
             InboundEvent event,
             boolean failDatabase
     ) {
-        orderService.processNonIdempotent(key, event, failDatabase, true);
+        executor.execute(key, () -> orderService.processNonIdempotent(key, event, failDatabase, true));
     }
 
-    @Async
     public void processIdempotentAsync(
             String eventId,
             String key,
             InboundEvent event,
             boolean failDatabase
     ) {
-        orderService.processIdempotent(eventId, key, event, failDatabase, true);
+        UUID id = EventIds.parse(eventId);
+        executor.execute(key, ignoringDuplicates(() -> orderService.processIdempotent(id, null, key, event, failDatabase, true)));
     }
 
-    @Async
     public void processIdempotentAndOutboxAsync(
             String eventId,
             String key,
             InboundEvent event,
             boolean failDatabase
     ) {
-        orderService.processIdempotentAndOutbox(eventId, event, failDatabase, true);
+        UUID id = EventIds.parse(eventId);
+        executor.execute(key, ignoringDuplicates(() -> orderService.processIdempotentAndOutbox(id, null, key, event, failDatabase, true)));
+    }
+
+    /**
+     * Duplicates are reported in aggregate by the {@link DuplicateEventReporter}, not as failed tasks.
+     */
+    private static Runnable ignoringDuplicates(Runnable task) {
+        return () -> {
+            try {
+                task.run();
+            } catch (DuplicateEventException e) {
+                // Already reported
+            }
+        };
     }
 
+    /**
+     * Waits up to {@code async.drainTimeoutMs} for the events handed in so far to be processed, e.g. before partitions
+     * are revoked, so that another instance doesn't process the same keys concurrently. Events aren't tied to
+     * partitions, so all of them are waited for.
+     */
+    public void drain() throws InterruptedException {
+        if (!executor.awaitSubmitted(drainTimeoutMs, TimeUnit.MILLISECONDS)) {
+            log.warn("Events still being processed after {}ms, handing over their partitions anyway", drainTimeoutMs);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        if (!executor.awaitTermination(drainTimeoutMs, TimeUnit.MILLISECONDS)) {
+            log.warn("Events still being processed after {}ms, abandoning them", drainTimeoutMs);
+        }
+    }
 }
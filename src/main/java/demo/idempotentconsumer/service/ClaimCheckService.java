@@ -0,0 +1,75 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.repository.BlobStore;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.regex.Pattern;
+
+/**
+ * Implements the claim-check pattern for payloads.
+ *
+ * Payloads whose stored form is longer than the threshold are written once to the {@link BlobStore} and replaced by a reference to it in
+ * table rows and Kafka messages. Smaller payloads stay inline.
+ */
+@Service
+@Slf4j
+public class ClaimCheckService {
+
+    public static final String REFERENCE_PREFIX = "claim-check:sha256:";
+    private static final Pattern HASH = Pattern.compile("^[0-9a-f]{64}$");
+
+    private final BlobStore blobStore;
+    private final int threshold;
+
+    @Autowired
+    public ClaimCheckService(
+            BlobStore blobStore,
+            @Value("${claim-check.threshold}") int threshold
+    ) {
+        this.blobStore = blobStore;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the payload itself if it is small enough to be kept inline, otherwise a reference to the stored payload.
+     */
+    public String checkIn(String payload) {
+        return checkIn(payload, payload != null ? payload.length() : 0);
+    }
+
+    /**
+     * Like {@link #checkIn(String)}, for payloads stored in another form, e.g. encoded and compressed, of the given
+     * length.
+     */
+    public String checkIn(String payload, int storedLength) {
+        if (payload == null || storedLength <= threshold) return payload;
+
+        String reference = REFERENCE_PREFIX + blobStore.put(payload.getBytes(StandardCharsets.UTF_8));
+        log.debug("Payload of {} chars checked in as {}", payload.length(), reference);
+        return reference;
+    }
+
+    /**
+     * Returns the payload, resolving it from the blob store if the given value is a reference.
+     *
+     * @throws InvalidEventException if the reference doesn't hold a SHA-256 hash.
+     */
+    public String checkOut(String payloadOrReference) {
+        if (!isReference(payloadOrReference)) return payloadOrReference;
+
+        String hash = payloadOrReference.substring(REFERENCE_PREFIX.length());
+        if (!HASH.matcher(hash).matches()) {
+            throw new InvalidEventException("malformed claim-check reference: " + payloadOrReference);
+        }
+        return new String(blobStore.get(hash), StandardCharsets.UTF_8);
+    }
+
+    public static boolean isReference(String payloadOrReference) {
+        return payloadOrReference != null && payloadOrReference.startsWith(REFERENCE_PREFIX);
+    }
+}
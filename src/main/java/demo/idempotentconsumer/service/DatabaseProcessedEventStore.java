@@ -0,0 +1,129 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.model.event.inbound.EventSources;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import demo.idempotentconsumer.repository.AppendOnlyRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records processed events in the processed_inbound_event table, in the same transaction as the rest of the
+ * processing. The primary key makes the check atomic; the row is inserted right away, without a persistence context.
+ *
+ * The recently processed Ids of assigned partitions are kept in the {@link RecentEventIdCache}, so most redeliveries
+ * are rejected without a database round trip. Records of retry topics are recorded under their inbound partition, so
+ * only inbound partitions are warmed up.
+ */
+@Slf4j
+public class DatabaseProcessedEventStore implements ProcessedEventStore {
+
+    private final ProcessedEventRepository processedEventRepository;
+    private final AppendOnlyRepository appendOnlyRepository;
+    private final RecentEventIdCache recentEventIdCache;
+    private final DuplicateEventReporter duplicateEventReporter;
+    private final Duration window;
+    private final int maxIdsPerPartition;
+
+    public DatabaseProcessedEventStore(
+            ProcessedEventRepository processedEventRepository,
+            AppendOnlyRepository appendOnlyRepository,
+            RecentEventIdCache recentEventIdCache,
+            DuplicateEventReporter duplicateEventReporter,
+            Duration window,
+            int maxIdsPerPartition
+    ) {
+        this.processedEventRepository = processedEventRepository;
+        this.appendOnlyRepository = appendOnlyRepository;
+        this.recentEventIdCache = recentEventIdCache;
+        this.duplicateEventReporter = duplicateEventReporter;
+        this.window = window;
+        this.maxIdsPerPartition = maxIdsPerPartition;
+    }
+
+    @Override
+    public void add(UUID eventId, TopicPartition source) throws DuplicateEventException {
+        if (source != null && recentEventIdCache.contains(source, eventId)) {
+            duplicateEventReporter.record(source);
+            throw new DuplicateEventException(eventId);
+        }
+        try {
+            appendOnlyRepository.insertProcessedEvent(newProcessedInboundEvent(eventId, source, System.currentTimeMillis()));
+            log.debug("Event persisted with Id: {}", eventId);
+        } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
+            duplicateEventReporter.record(source);
+            throw new DuplicateEventException(eventId);
+        }
+        rememberAfterCommit(eventId, source);
+    }
+
+    @Override
+    public boolean contains(UUID eventId, TopicPartition source) {
+        if (source != null && recentEventIdCache.contains(source, eventId)) return true;
+        return processedEventRepository.existsById(eventId);
+    }
+
+    @Override
+    public int addAll(Map<UUID, TopicPartition> eventSources) {
+        long now = System.currentTimeMillis();
+        int newlyProcessed = appendOnlyRepository.insertProcessedEventsIfAbsent(eventSources.entrySet().stream()
+                .map(entry -> newProcessedInboundEvent(entry.getKey(), entry.getValue(), now))
+                .toList());
+        eventSources.forEach(this::rememberAfterCommit);
+        return newlyProcessed;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        long since = System.currentTimeMillis() - window.toMillis();
+        for (TopicPartition partition : partitions) {
+            if (EventSources.isRetryTopic(partition.topic())) continue;
+            try {
+                List<UUID> recentEventIds = processedEventRepository.findRecentEventIds(
+                        partition.topic(), partition.partition(), since, PageRequest.of(0, maxIdsPerPartition));
+                recentEventIdCache.load(partition, recentEventIds);
+            } catch (RuntimeException e) {
+                // Deduplication falls back to the database for this partition.
+                log.warn("Failed to warm up recent event Ids for {}", partition, e);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        recentEventIdCache.evict(partitions.stream()
+                .filter(partition -> !EventSources.isRetryTopic(partition.topic()))
+                .toList());
+    }
+
+    private static ProcessedInboundEvent newProcessedInboundEvent(UUID eventId, TopicPartition source, long processedAt) {
+        return source != null
+                ? new ProcessedInboundEvent(eventId, source.topic(), source.partition(), processedAt)
+                : new ProcessedInboundEvent(eventId, null, null, processedAt);
+    }
+
+    /**
+     * Only committed events may be remembered, otherwise a rolled back event would never be redelivered.
+     */
+    private void rememberAfterCommit(UUID eventId, TopicPartition source) {
+        if (source == null) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                recentEventIdCache.add(source, eventId);
+            }
+        });
+    }
+}
@@ -0,0 +1,44 @@
+package demo.idempotentconsumer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts rejected duplicate events per topic and reports them periodically, instead of logging a line per duplicate.
+ * Redelivery storms produce duplicates at the rate events are consumed, which a line per event would turn into a
+ * logging bottleneck.
+ */
+@Slf4j
+@Component
+public class DuplicateEventReporter {
+
+    /**
+     * Reported for events that weren't consumed from Kafka, e.g. those handed to {@link AsyncOrderService}.
+     */
+    static final String NO_TOPIC = "(none)";
+
+    private final Map<String, LongAdder> duplicatesByTopic = new ConcurrentHashMap<>();
+    private volatile long lastReportedAt = System.currentTimeMillis();
+
+    public void record(TopicPartition source) {
+        String topic = source != null ? source.topic() : NO_TOPIC;
+        duplicatesByTopic.computeIfAbsent(topic, t -> new LongAdder()).increment();
+    }
+
+    @Scheduled(fixedDelayString = "${deduplication.reportIntervalMs}", initialDelayString = "${deduplication.reportIntervalMs}")
+    public void report() {
+        long now = System.currentTimeMillis();
+        long seconds = Math.round((now - lastReportedAt) / 1000.0);
+        lastReportedAt = now;
+        duplicatesByTopic.forEach((topic, duplicates) -> {
+            long count = duplicates.sumThenReset();
+            if (count > 0) log.warn("{} duplicate events on topic {} in the last {}s", count, topic, seconds);
+        });
+    }
+}
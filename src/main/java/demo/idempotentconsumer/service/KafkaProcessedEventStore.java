@@ -0,0 +1,304 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
+import demo.idempotentconsumer.model.event.inbound.EventSources;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.config.TopicConfig;
+import org.springframework.kafka.KafkaException;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.KafkaAdmin;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Records processed events in log-compacted Kafka topics keyed by event Id, so that deduplication needs no database
+ * round trip.
+ *
+ * Each inbound topic has a state topic named after it with {@code deduplication.kafka.topicSuffix}, with the same
+ * partitions: the Ids of the events consumed from inbound partition N are produced to state partition N. When inbound
+ * partitions are assigned, the Ids of the matching state partitions are read into off-heap sets. State topics also
+ * delete Ids older than {@code deduplication.kafka.retention}, which bounds their size.
+ *
+ * Ids are produced once the processing transaction commits, before the listener returns and the inbound offset is
+ * committed. Unlike the database backend this isn't atomic with the processing: if the Id can't be produced it is
+ * dropped from the set again, and the event is redelivered and processed again.
+ *
+ * Records from retry topics are checked against the state partition of their original partition. Retry topics are
+ * consumed independently of their inbound topic, so the instance owning an inbound partition isn't the only one
+ * writing its state partition: every state is caught up from Kafka before each lookup, whether this instance owns the
+ * partition or not. Owned states only read what other instances produced since the last lookup. Two instances
+ * processing the same event at the same time, one from the inbound topic and one from a retry topic, can still both
+ * process it. A catch-up taking longer than {@code deduplication.kafka.catchUpTimeout} fails the lookup, so the record
+ * is retried later instead of blocking the other lookups, and the state of partitions owned by other instances is
+ * released once it hasn't been looked up for {@code deduplication.kafka.idleStateTimeout}.
+ *
+ * Events that weren't consumed from Kafka have no state partition, so they are recorded in the fallback store instead,
+ * which is the database.
+ */
+@Slf4j
+public class KafkaProcessedEventStore implements ProcessedEventStore {
+
+    private static final Duration POLL_TIMEOUT = Duration.ofMillis(100);
+
+    private final KafkaAdmin kafkaAdmin;
+    private final Producer<byte[], byte[]> producer;
+    private final DuplicateEventReporter duplicateEventReporter;
+    private final ProcessedEventStore fallback;
+    private final Consumer<byte[], byte[]> restoreConsumer;
+    private final String topicSuffix;
+    private final Duration retention;
+    private final int expectedIdsPerPartition;
+    private final Duration catchUpTimeout;
+    private final Duration idleStateTimeout;
+
+    private final Set<String> stateTopics = ConcurrentHashMap.newKeySet();
+    private final Map<TopicPartition, PartitionState> statesByPartition = new ConcurrentHashMap<>();
+
+    public KafkaProcessedEventStore(
+            KafkaAdmin kafkaAdmin,
+            Producer<byte[], byte[]> producer,
+            DuplicateEventReporter duplicateEventReporter,
+            ProcessedEventStore fallback,
+            Consumer<byte[], byte[]> restoreConsumer,
+            String topicSuffix,
+            Duration retention,
+            int expectedIdsPerPartition,
+            Duration catchUpTimeout,
+            Duration idleStateTimeout
+    ) {
+        this.kafkaAdmin = kafkaAdmin;
+        this.producer = producer;
+        this.duplicateEventReporter = duplicateEventReporter;
+        this.fallback = fallback;
+        this.restoreConsumer = restoreConsumer;
+        this.topicSuffix = topicSuffix;
+        this.retention = retention;
+        this.expectedIdsPerPartition = expectedIdsPerPartition;
+        this.catchUpTimeout = catchUpTimeout;
+        this.idleStateTimeout = idleStateTimeout;
+    }
+
+    @Override
+    public void add(UUID eventId, TopicPartition source) throws DuplicateEventException {
+        if (source == null) {
+            fallback.add(eventId, null);
+            return;
+        }
+        TopicPartition statePartition = statePartitionOf(source);
+        PartitionState state = currentState(statePartition);
+        if (!state.eventIds.add(eventId)) {
+            duplicateEventReporter.record(source);
+            throw new DuplicateEventException(eventId);
+        }
+        produceAfterCommit(statePartition, state, eventId);
+    }
+
+    @Override
+    public boolean contains(UUID eventId, TopicPartition source) {
+        if (source == null) return fallback.contains(eventId, null);
+        return currentState(statePartitionOf(source)).eventIds.contains(eventId);
+    }
+
+    @Override
+    public int addAll(Map<UUID, TopicPartition> eventSources) {
+        int newlyProcessed = 0;
+        Map<UUID, TopicPartition> withoutSource = new HashMap<>();
+        for (Map.Entry<UUID, TopicPartition> eventSource : eventSources.entrySet()) {
+            if (eventSource.getValue() == null) {
+                withoutSource.put(eventSource.getKey(), null);
+                continue;
+            }
+            TopicPartition statePartition = statePartitionOf(eventSource.getValue());
+            PartitionState state = currentState(statePartition);
+            if (state.eventIds.add(eventSource.getKey())) {
+                produceAfterCommit(statePartition, state, eventSource.getKey());
+                newlyProcessed++;
+            }
+        }
+        if (!withoutSource.isEmpty()) newlyProcessed += fallback.addAll(withoutSource);
+        return newlyProcessed;
+    }
+
+    @Override
+    public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (!isInboundTopic(partition.topic())) continue;
+
+            TopicPartition statePartition = statePartitionOf(partition);
+            try {
+                PartitionState state = new PartitionState(new OffHeapUuidSet(expectedIdsPerPartition), true);
+                catchUp(statePartition, state);
+                statesByPartition.put(statePartition, state);
+                log.debug("Loaded {} processed event Ids for {}", state.eventIds.size(), partition);
+            } catch (RuntimeException e) {
+                // The state is then caught up before each lookup, like for partitions owned by other instances.
+                log.warn("Failed to load processed event Ids for {}", partition, e);
+            }
+        }
+    }
+
+    @Override
+    public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+        for (TopicPartition partition : partitions) {
+            if (isInboundTopic(partition.topic())) statesByPartition.remove(statePartitionOf(partition));
+        }
+    }
+
+    public synchronized void close() {
+        producer.close();
+        restoreConsumer.close();
+    }
+
+    private PartitionState currentState(TopicPartition statePartition) {
+        PartitionState state = statesByPartition.computeIfAbsent(statePartition,
+                partition -> new PartitionState(new OffHeapUuidSet(expectedIdsPerPartition), false));
+        if (!state.owned) {
+            long now = System.currentTimeMillis();
+            state.lastUsed = now;
+            releaseIdleStates(now);
+        }
+        catchUp(statePartition, state);
+        return state;
+    }
+
+    /**
+     * Drops the state of partitions owned by other instances that hasn't been looked up lately. Their off-heap memory
+     * is freed once the sets are collected.
+     */
+    private void releaseIdleStates(long now) {
+        long idleSince = now - idleStateTimeout.toMillis();
+        statesByPartition.entrySet().removeIf(entry -> !entry.getValue().owned && entry.getValue().lastUsed < idleSince);
+    }
+
+    /**
+     * Reads the state partition from the last position read up to its current end.
+     *
+     * @throws KafkaException if the end isn't reached within {@code deduplication.kafka.catchUpTimeout}. The records
+     *                        read so far are kept, so the next catch-up resumes after them.
+     */
+    private synchronized void catchUp(TopicPartition statePartition, PartitionState state) {
+        if (!stateTopics.contains(statePartition.topic())) {
+            // State topics are created with the first processed event
+            if (restoreConsumer.partitionsFor(statePartition.topic()).isEmpty()) return;
+            stateTopics.add(statePartition.topic());
+        }
+
+        long deadline = System.currentTimeMillis() + catchUpTimeout.toMillis();
+        List<TopicPartition> assignment = List.of(statePartition);
+        restoreConsumer.assign(assignment);
+        try {
+            restoreConsumer.seek(statePartition, state.position);
+            long end = restoreConsumer.endOffsets(assignment, catchUpTimeout).get(statePartition);
+            while (restoreConsumer.position(statePartition) < end) {
+                if (System.currentTimeMillis() > deadline) {
+                    throw new KafkaException("Timed out catching up " + statePartition + " after " + catchUpTimeout);
+                }
+                for (ConsumerRecord<byte[], byte[]> record : restoreConsumer.poll(POLL_TIMEOUT)) {
+                    UUID eventId = EventIds.parse(record.key());
+                    if (record.value() != null) state.eventIds.add(eventId);
+                    else state.eventIds.remove(eventId);
+                    state.position = record.offset() + 1;
+                }
+            }
+            state.position = restoreConsumer.position(statePartition);
+        } finally {
+            restoreConsumer.unsubscribe();
+        }
+    }
+
+    /**
+     * Creates the state topic with as many partitions as its inbound topic, unless it exists.
+     */
+    private void ensureStateTopic(String stateTopic) {
+        if (stateTopics.contains(stateTopic)) return;
+
+        String inboundTopic = stateTopic.substring(0, stateTopic.length() - topicSuffix.length());
+        int partitions = kafkaAdmin.describeTopics(inboundTopic).get(inboundTopic).partitions().size();
+        kafkaAdmin.createOrModifyTopics(TopicBuilder.name(stateTopic)
+                .partitions(partitions)
+                .config(TopicConfig.CLEANUP_POLICY_CONFIG, TopicConfig.CLEANUP_POLICY_COMPACT + "," + TopicConfig.CLEANUP_POLICY_DELETE)
+                .config(TopicConfig.RETENTION_MS_CONFIG, String.valueOf(retention.toMillis()))
+                .build());
+        stateTopics.add(stateTopic);
+    }
+
+    /**
+     * Only committed events may be produced, otherwise a rolled back event would never be processed.
+     */
+    private void produceAfterCommit(TopicPartition statePartition, PartitionState state, UUID eventId) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            produce(statePartition, state, eventId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                produce(statePartition, state, eventId);
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) state.eventIds.remove(eventId);
+            }
+        });
+    }
+
+    /**
+     * Produces the Id to the state partition. If that fails the Id is dropped from the state, so that the redelivered
+     * event isn't rejected as a duplicate of an event that was never recorded.
+     */
+    private void produce(TopicPartition statePartition, PartitionState state, UUID eventId) {
+        byte[] processedAt = ByteBuffer.allocate(Long.BYTES).putLong(System.currentTimeMillis()).array();
+        try {
+            ensureStateTopic(statePartition.topic());
+            producer.send(new ProducerRecord<>(statePartition.topic(), statePartition.partition(), EventIds.toBytes(eventId), processedAt)).get();
+        } catch (InterruptedException e) {
+            state.eventIds.remove(eventId);
+            Thread.currentThread().interrupt();
+            throw new KafkaException("Interrupted while recording processed event " + eventId, e);
+        } catch (ExecutionException e) {
+            state.eventIds.remove(eventId);
+            throw new KafkaException("Failed to record processed event " + eventId, e.getCause());
+        } catch (RuntimeException e) {
+            state.eventIds.remove(eventId);
+            throw e;
+        }
+    }
+
+    private TopicPartition statePartitionOf(TopicPartition source) {
+        return new TopicPartition(EventSources.inboundTopicOf(source.topic()) + topicSuffix, source.partition());
+    }
+
+    private boolean isInboundTopic(String topic) {
+        return !EventSources.isRetryTopic(topic) && !topic.endsWith(topicSuffix);
+    }
+
+    private static class PartitionState {
+        final OffHeapUuidSet eventIds;
+        final boolean owned;
+        long position;
+        volatile long lastUsed;
+
+        PartitionState(OffHeapUuidSet eventIds, boolean owned) {
+            this.eventIds = eventIds;
+            this.owned = owned;
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package demo.idempotentconsumer.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs tasks in parallel, except that tasks with the same key run one after another, in the order they were submitted.
+ *
+ * Keys are striped onto a fixed number of lock-free queues. A stripe with pending tasks has a single drain task on the
+ * pool, which runs them in order, and a stripe without pending tasks holds no thread, so no thread ever waits for a
+ * task of the same key to finish. Different keys sharing a stripe are serialized too, so there should be many more
+ * stripes than threads. Tasks without a key aren't ordered.
+ *
+ * Once shut down, new tasks are rejected while the pending ones still run, each stripe draining its queue to the end.
+ * Without shutting down, {@link #awaitSubmitted} waits for the tasks submitted so far, e.g. before handing their keys
+ * over to another instance.
+ */
+@Slf4j
+class KeyedSerialExecutor {
+
+    /**
+     * A drain task hands its thread back after this many tasks, so that a busy key can't starve the other stripes.
+     */
+    static final int MAX_TASKS_PER_DRAIN = 64;
+
+    private static final long AWAIT_POLL_MS = 5;
+
+    private final ExecutorService executor;
+    private final Stripe[] stripes;
+    private final AtomicLong unorderedSubmitted = new AtomicLong();
+    private final AtomicLong unorderedCompleted = new AtomicLong();
+
+    KeyedSerialExecutor(String name, int threads, int stripeCount) {
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, name + "-" + threadIndex.getAndIncrement()));
+        this.stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) stripes[i] = new Stripe();
+    }
+
+    void execute(Object key, Runnable task) {
+        if (executor.isShutdown()) throw new RejectedExecutionException("Executor is shut down");
+        if (key == null) {
+            unorderedSubmitted.incrementAndGet();
+            executor.execute(() -> {
+                runSafely(task);
+                unorderedCompleted.incrementAndGet();
+            });
+            return;
+        }
+        Stripe stripe = stripes[Math.floorMod(spread(key.hashCode()), stripes.length)];
+        stripe.submitted.incrementAndGet();
+        stripe.tasks.offer(task);
+        stripe.schedule();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for the pending tasks to complete after a shutdown, and returns false if some are still pending after the
+     * timeout.
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Waits for the tasks submitted before the call to complete, but not for those submitted meanwhile, and returns
+     * false if some are still pending after the timeout. A stripe runs its tasks in order, so it is done once it has
+     * completed as many tasks as had been submitted to it.
+     */
+    boolean awaitSubmitted(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long[] submitted = new long[stripes.length];
+        for (int i = 0; i < stripes.length; i++) submitted[i] = stripes[i].submitted.get();
+        long unordered = unorderedSubmitted.get();
+
+        for (int i = 0; i < stripes.length; i++) {
+            while (stripes[i].completed.get() < submitted[i]) {
+                if (System.nanoTime() >= deadline) return false;
+                Thread.sleep(AWAIT_POLL_MS);
+            }
+        }
+        // Tasks without a key complete in any order, so this waits for as many of them to complete instead.
+        while (unorderedCompleted.get() < unordered) {
+            if (System.nanoTime() >= deadline) return false;
+            Thread.sleep(AWAIT_POLL_MS);
+        }
+        return true;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static void runSafely(Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            log.error("Asynchronous task failed", e);
+        }
+    }
+
+    private final class Stripe implements Runnable {
+
+        final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+
+        void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    // Shut down while rescheduling itself, so the last drain task keeps its thread instead.
+                    run();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_TASKS_PER_DRAIN || executor.isShutdown(); i++) {
+                Runnable task = tasks.poll();
+                if (task == null) break;
+                runSafely(task);
+                completed.incrementAndGet();
+            }
+            scheduled.set(false);
+            // A task offered after the last poll may have found the stripe still scheduled.
+            if (!tasks.isEmpty()) schedule();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package demo.idempotentconsumer.service;
+
+import java.nio.ByteBuffer;
+import java.util.UUID;
+
+/**
+ * Hash set of UUIDs kept off the heap, in a direct buffer of 16 bytes per slot, using linear probing. Millions of Ids
+ * take neither heap space nor garbage collection time.
+ *
+ * An all-zero slot marks an empty slot, so the nil UUID is tracked separately.
+ */
+public class OffHeapUuidSet {
+
+    private static final int SLOT_BYTES = 16;
+    private static final int MAX_SLOTS = Integer.highestOneBit(Integer.MAX_VALUE / SLOT_BYTES);
+
+    private ByteBuffer slots;
+    private int mask;
+    private int size;
+    private boolean containsNil;
+
+    public OffHeapUuidSet(int expectedSize) {
+        int capacity = 16;
+        while (capacity < MAX_SLOTS && capacity < expectedSize * 2L) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    public synchronized boolean add(UUID eventId) {
+        long msb = eventId.getMostSignificantBits();
+        long lsb = eventId.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            if (containsNil) return false;
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        if ((size + 1) * 2L > mask + 1L) grow();
+        for (int slot = home(msb, lsb); ; slot = (slot + 1) & mask) {
+            if (isEmpty(slot)) {
+                write(slot, msb, lsb);
+                size++;
+                return true;
+            }
+            if (matches(slot, msb, lsb)) return false;
+        }
+    }
+
+    public synchronized boolean contains(UUID eventId) {
+        long msb = eventId.getMostSignificantBits();
+        long lsb = eventId.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) return containsNil;
+
+        return find(msb, lsb) >= 0;
+    }
+
+    public synchronized boolean remove(UUID eventId) {
+        long msb = eventId.getMostSignificantBits();
+        long lsb = eventId.getLeastSignificantBits();
+        if (msb == 0 && lsb == 0) {
+            if (!containsNil) return false;
+            containsNil = false;
+            size--;
+            return true;
+        }
+
+        int hole = find(msb, lsb);
+        if (hole < 0) return false;
+
+        // Shifts the following entries of the probe sequence back, so that no tombstones are needed.
+        for (int slot = (hole + 1) & mask; !isEmpty(slot); slot = (slot + 1) & mask) {
+            int home = home(slots.getLong(slot * SLOT_BYTES), slots.getLong(slot * SLOT_BYTES + 8));
+            boolean homeBetweenHoleAndSlot = hole <= slot
+                    ? hole < home && home <= slot
+                    : hole < home || home <= slot;
+            if (!homeBetweenHoleAndSlot) {
+                write(hole, slots.getLong(slot * SLOT_BYTES), slots.getLong(slot * SLOT_BYTES + 8));
+                hole = slot;
+            }
+        }
+        write(hole, 0, 0);
+        size--;
+        return true;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    private int find(long msb, long lsb) {
+        for (int slot = home(msb, lsb); !isEmpty(slot); slot = (slot + 1) & mask) {
+            if (matches(slot, msb, lsb)) return slot;
+        }
+        return -1;
+    }
+
+    private void grow() {
+        if (mask + 1 >= MAX_SLOTS) throw new IllegalStateException("Set is full");
+
+        ByteBuffer previous = slots;
+        int previousCapacity = mask + 1;
+        allocate(previousCapacity << 1);
+        for (int slot = 0; slot < previousCapacity; slot++) {
+            long msb = previous.getLong(slot * SLOT_BYTES);
+            long lsb = previous.getLong(slot * SLOT_BYTES + 8);
+            if (msb == 0 && lsb == 0) continue;
+
+            int target = home(msb, lsb);
+            while (!isEmpty(target)) target = (target + 1) & mask;
+            write(target, msb, lsb);
+        }
+    }
+
+    private void allocate(int capacity) {
+        slots = ByteBuffer.allocateDirect(capacity * SLOT_BYTES);
+        mask = capacity - 1;
+    }
+
+    private int home(long msb, long lsb) {
+        long hash = (msb ^ lsb) * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private boolean isEmpty(int slot) {
+        return slots.getLong(slot * SLOT_BYTES) == 0 && slots.getLong(slot * SLOT_BYTES + 8) == 0;
+    }
+
+    private boolean matches(int slot, long msb, long lsb) {
+        return slots.getLong(slot * SLOT_BYTES) == msb && slots.getLong(slot * SLOT_BYTES + 8) == lsb;
+    }
+
+    private void write(int slot, long msb, long lsb) {
+        slots.putLong(slot * SLOT_BYTES, msb);
+        slots.putLong(slot * SLOT_BYTES + 8, lsb);
+    }
+}
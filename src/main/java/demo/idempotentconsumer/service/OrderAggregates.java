@@ -0,0 +1,212 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.model.domain.OrderSummary;
+import demo.idempotentconsumer.repository.OrderSummaryRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts orders per time window and key in memory, so that order counts and rates are served without scanning the
+ * orders table.
+ *
+ * Orders are counted once their transaction commits, on {@link LongAdder}s, which spread concurrent increments over
+ * cells instead of contending on one counter. Counts are added to the {@code order_summary} table every
+ * {@code aggregates.flushIntervalMs}, and loaded back from it on startup. Windows older than {@code aggregates.retention}
+ * are dropped from memory once flushed. Past {@code aggregates.maxWindows} windows, for instance with many distinct keys,
+ * the oldest flushed windows are dropped from memory too, and are then only counted in the table.
+ *
+ * Orders counted but not flushed yet when an instance dies are missing from the summary; {@link #rebuild()} recomputes
+ * the retained windows from the orders. With several instances, the table holds the counts of all of them, while each
+ * instance only adds its own orders to what it loaded on startup.
+ */
+@Slf4j
+@Service
+public class OrderAggregates implements SmartInitializingSingleton {
+
+    /**
+     * Orders without a key are counted under this key.
+     */
+    static final String NO_KEY = "";
+
+    private final Map<OrderSummary.Window, Bucket> buckets = new ConcurrentHashMap<>();
+    private final OrderSummaryRepository orderSummaryRepository;
+    private final long windowMs;
+    private final Duration retention;
+    private final int maxWindows;
+
+    @Autowired
+    public OrderAggregates(
+            OrderSummaryRepository orderSummaryRepository,
+            @Value("${aggregates.windowMs}") long windowMs,
+            @Value("${aggregates.retention}") Duration retention,
+            @Value("${aggregates.maxWindows}") int maxWindows
+    ) {
+        this.orderSummaryRepository = orderSummaryRepository;
+        this.windowMs = windowMs;
+        this.retention = retention;
+        this.maxWindows = maxWindows;
+    }
+
+    @Override
+    public synchronized void afterSingletonsInstantiated() {
+        List<OrderSummary> counts = orderSummaryRepository.findSince(horizon());
+        load(counts);
+        log.info("Loaded {} order summary windows", counts.size());
+    }
+
+    /**
+     * Counts an order once the surrounding transaction, if any, commits.
+     */
+    public void record(String key, long timestamp) {
+        afterCommit(() -> increment(key, timestamp, 1));
+    }
+
+    /**
+     * Counts an order per key once the surrounding transaction, if any, commits.
+     */
+    public void record(List<String> keys, long timestamp) {
+        afterCommit(() -> keys.forEach(key -> increment(key, timestamp, 1)));
+    }
+
+    /**
+     * Returns the counts of the windows starting within [from, to), for the key or for all keys if null, in window
+     * order.
+     */
+    public List<OrderSummary> find(long from, long to, String key) {
+        List<OrderSummary> counts = new ArrayList<>();
+        buckets.forEach((window, bucket) -> {
+            if (window.getWindowStart() < from || window.getWindowStart() >= to) return;
+            if (key != null && !key.equals(window.getOrderKey())) return;
+            counts.add(new OrderSummary(window.getWindowStart(), window.getOrderKey(), bucket.count.sum()));
+        });
+        counts.sort(Comparator.comparingLong(OrderSummary::getWindowStart).thenComparing(OrderSummary::getOrderKey));
+        return counts;
+    }
+
+    public long getWindowMs() {
+        return windowMs;
+    }
+
+    /**
+     * Adds the counts since the last flush to the summary table. Counts that fail to flush are retried by the next flush.
+     */
+    @Scheduled(fixedDelayString = "${aggregates.flushIntervalMs}", initialDelayString = "${aggregates.flushIntervalMs}")
+    public synchronized void flush() {
+        List<OrderSummary> deltas = new ArrayList<>();
+        List<Bucket> flushed = new ArrayList<>();
+        List<Long> totals = new ArrayList<>();
+        buckets.forEach((window, bucket) -> {
+            long total = bucket.count.sum();
+            if (total == bucket.flushed) return;
+            deltas.add(new OrderSummary(window.getWindowStart(), window.getOrderKey(), total - bucket.flushed));
+            flushed.add(bucket);
+            totals.add(total);
+        });
+
+        try {
+            orderSummaryRepository.addCounts(deltas);
+            for (int i = 0; i < flushed.size(); i++) flushed.get(i).flushed = totals.get(i);
+        } catch (DataAccessException e) {
+            log.warn("Failed to flush {} order summary windows, retrying with the next flush", deltas.size(), e);
+        }
+        evictFlushedWindows();
+    }
+
+    /**
+     * Drops flushed windows past the retention, then the oldest flushed windows over the limit. The current window is
+     * never dropped for the limit, so increments racing with the eviction aren't lost.
+     */
+    private void evictFlushedWindows() {
+        long horizon = horizon();
+        buckets.entrySet().removeIf(entry -> entry.getKey().getWindowStart() < horizon && entry.getValue().isFlushed());
+
+        int excess = buckets.size() - maxWindows;
+        if (excess <= 0) return;
+        long now = System.currentTimeMillis();
+        long currentWindowStart = now - Math.floorMod(now, windowMs);
+        List<OrderSummary.Window> evicted = buckets.entrySet().stream()
+                .filter(entry -> entry.getKey().getWindowStart() < currentWindowStart && entry.getValue().isFlushed())
+                .map(Map.Entry::getKey)
+                .sorted(Comparator.comparingLong(OrderSummary.Window::getWindowStart))
+                .limit(excess)
+                .toList();
+        evicted.forEach(buckets::remove);
+        log.warn("Dropped {} flushed order summary windows from memory, over the limit of {}", evicted.size(), maxWindows);
+    }
+
+    /**
+     * Recomputes the retained windows from the orders, in the summary table and in memory. Orders committed while
+     * rebuilding may be counted twice or not at all, so rebuild while ingestion is quiet.
+     */
+    public synchronized int rebuild() {
+        List<OrderSummary> counts = orderSummaryRepository.rebuildSince(horizon(), windowMs);
+        buckets.clear();
+        load(counts);
+        log.info("Rebuilt {} order summary windows", counts.size());
+        return counts.size();
+    }
+
+    private void load(List<OrderSummary> counts) {
+        for (OrderSummary count : counts) {
+            Bucket bucket = bucket(new OrderSummary.Window(count.getWindowStart(), count.getOrderKey()));
+            bucket.count.add(count.getOrderCount());
+            bucket.flushed += count.getOrderCount();
+        }
+    }
+
+    private void increment(String key, long timestamp, long orders) {
+        long windowStart = timestamp - Math.floorMod(timestamp, windowMs);
+        bucket(new OrderSummary.Window(windowStart, key != null ? key : NO_KEY)).count.add(orders);
+    }
+
+    private Bucket bucket(OrderSummary.Window window) {
+        // Existing windows are looked up without locking.
+        Bucket bucket = buckets.get(window);
+        return bucket != null ? bucket : buckets.computeIfAbsent(window, w -> new Bucket());
+    }
+
+    private long horizon() {
+        long since = System.currentTimeMillis() - retention.toMillis();
+        return since - Math.floorMod(since, windowMs);
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+
+    private static final class Bucket {
+        final LongAdder count = new LongAdder();
+        /**
+         * The part of the count in the summary table. Only changed while holding the lock of the aggregates.
+         */
+        long flushed;
+
+        boolean isFlushed() {
+            return count.sum() == flushed;
+        }
+    }
+}
@@ -1,49 +1,68 @@
 package demo.idempotentconsumer.service;
 
-import demo.idempotentconsumer.exception.DuplicateEventException;
 import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.exception.InvalidEventException;
 import demo.idempotentconsumer.exception.SimulatedFailureException;
 import demo.idempotentconsumer.model.domain.PurchaseOrder;
 import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
-import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
 import demo.idempotentconsumer.model.event.inbound.InboundEvent;
-import demo.idempotentconsumer.repository.PurchaseOrderRepository;
-import demo.idempotentconsumer.repository.OutboxEventRepository;
-import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.AppendOnlyRepository;
+import demo.idempotentconsumer.service.PayloadService.StoredPayload;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataIntegrityViolationException;
-import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.Map;
 import java.util.UUID;
 
+/**
+ * Processes inbound events. By default each event is processed in one transaction, which holds its database connection
+ * while waiting for the outbound topic. With {@code processing.shortTransactions} the slow work is done before the
+ * transaction, which then only records the event and writes the rows.
+ */
 @Service
 @Slf4j
 @RequiredArgsConstructor
 public class OrderService {;
 
+    public static final String OUTBOX_DESTINATION = "demo-outbox-outbound";
+
     private KafkaClient kafkaClient;
-    private ProcessedEventRepository processedEventRepository;
-    private OutboxEventRepository outboxEventRepository;
-    private PurchaseOrderRepository purchaseOrderRepository;
+    private ProcessedEventStore processedEventStore;
+    private DuplicateEventReporter duplicateEventReporter;
+    private AppendOnlyRepository appendOnlyRepository;
+    private PayloadService payloadService;
+    private OrderAggregates orderAggregates;
+    private TransactionTemplate transactionTemplate;
+    private boolean shortTransactions;
 
     @Autowired
     public OrderService(
             KafkaClient kafkaClient,
-            ProcessedEventRepository processedEventRepository,
-            OutboxEventRepository outboxEventRepository,
-            PurchaseOrderRepository purchaseOrderRepository
+            ProcessedEventStore processedEventStore,
+            DuplicateEventReporter duplicateEventReporter,
+            AppendOnlyRepository appendOnlyRepository,
+            PayloadService payloadService,
+            OrderAggregates orderAggregates,
+            TransactionTemplate transactionTemplate,
+            @Value("${processing.shortTransactions}") boolean shortTransactions
     ) {
         this.kafkaClient = kafkaClient;
-        this.processedEventRepository = processedEventRepository;
-        this.outboxEventRepository = outboxEventRepository;
-        this.purchaseOrderRepository = purchaseOrderRepository;
+        this.processedEventStore = processedEventStore;
+        this.duplicateEventReporter = duplicateEventReporter;
+        this.appendOnlyRepository = appendOnlyRepository;
+        this.payloadService = payloadService;
+        this.orderAggregates = orderAggregates;
+        this.transactionTemplate = transactionTemplate;
+        this.shortTransactions = shortTransactions;
     }
 
-    @Transactional
     public void processNonIdempotent(
             String key,
             InboundEvent event,
@@ -51,79 +70,158 @@ public class OrderService {;
             boolean delay
     ) {
         log.debug("Processing non-idempotent event: {}", event);
-        if (delay) delay();
-        writeOrder(event.getData());
-        kafkaClient.sendMessage(key, event.getData());
-
-        if (failDatabase)
-            throw new SimulatedFailureException("Database failed to commit");
+        validate(event);
+        if (shortTransactions) {
+            if (delay) delay();
+            StoredPayload payload = payloadService.store(event);
+            kafkaClient.sendMessage(key, payload.getText());
+            transactionTemplate.executeWithoutResult(status -> {
+                writeOrder(key, payload);
+                failIf(failDatabase);
+            });
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            if (delay) delay();
+            StoredPayload payload = payloadService.store(event);
+            writeOrder(key, payload);
+            kafkaClient.sendMessage(key, payload.getText());
+            failIf(failDatabase);
+        });
     }
 
-    @Transactional
     public void processIdempotent(
-            String eventId,
+            UUID eventId,
+            TopicPartition source,
             String key,
             InboundEvent event,
             boolean failDatabase,
             boolean delay
     ) {
         log.debug("Processing idempotent event: {}", event);
-        deduplicate(UUID.fromString(eventId));
-
-        if (delay) delay();
+        validate(event);
+        if (shortTransactions) {
+            rejectIfProcessed(eventId, source);
+            if (delay) delay();
+            StoredPayload payload = payloadService.store(event);
+            // Sent before the event is recorded, like in a long transaction: a failure from here on leads to a
+            // duplicate outbound message, never to a lost one.
+            kafkaClient.sendMessage(key, payload.getText());
+            transactionTemplate.executeWithoutResult(status -> {
+                processedEventStore.add(eventId, source);
+                writeOrder(key, payload);
+                failIf(failDatabase);
+            });
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            processedEventStore.add(eventId, source);
 
-        writeOrder(event.getData());
-        kafkaClient.sendMessage(key, event.getData());
+            if (delay) delay();
 
-        if (failDatabase)
-            throw new SimulatedFailureException("Database failed to commit");
+            StoredPayload payload = payloadService.store(event);
+            writeOrder(key, payload);
+            kafkaClient.sendMessage(key, payload.getText());
+            failIf(failDatabase);
+        });
     }
 
-    @Transactional
     public void processIdempotentAndOutbox(
-            String eventId,
+            UUID eventId,
+            TopicPartition source,
+            String key,
             InboundEvent event,
             boolean failDatabase,
             boolean delay
     ) {
         log.debug("Processing idempotent+outbox event: {}", event);
-        deduplicate(UUID.fromString(eventId));
+        validate(event);
+        if (shortTransactions) {
+            rejectIfProcessed(eventId, source);
+            if (delay) delay();
+            StoredPayload payload = payloadService.store(event);
+            transactionTemplate.executeWithoutResult(status -> {
+                processedEventStore.add(eventId, source);
+                writeOrder(key, payload);
+                writeOutboxEvent(key, payload);
+                failIf(failDatabase);
+            });
+            return;
+        }
+        transactionTemplate.executeWithoutResult(status -> {
+            processedEventStore.add(eventId, source);
 
-        if (delay) delay();
+            if (delay) delay();
 
-        writeOrder(event.getData());
-        writeOutboxEvent(event.getData());
+            StoredPayload payload = payloadService.store(event);
+            writeOrder(key, payload);
+            writeOutboxEvent(key, payload);
+            failIf(failDatabase);
+        });
+    }
+
+    /**
+     * Marks events as processed without processing them, e.g. records superseded by a newer record for the same key.
+     * Events that were already processed are left untouched.
+     */
+    @Transactional
+    public void markProcessed(Map<UUID, TopicPartition> eventSources) {
+        if (eventSources.isEmpty()) return;
+
+        int newlyProcessed = processedEventStore.addAll(eventSources);
+        log.debug("Marked {} superseded events as processed", newlyProcessed);
+    }
 
+    /**
+     * Rejects events known to be processed already before any work is done for them. Only recording the event in the
+     * transaction is atomic, so a duplicate delivered concurrently is still caught there.
+     */
+    private void rejectIfProcessed(UUID eventId, TopicPartition source) throws DuplicateEventException {
+        if (processedEventStore.contains(eventId, source)) {
+            duplicateEventReporter.record(source);
+            throw new DuplicateEventException(eventId);
+        }
+    }
+
+    private void failIf(boolean failDatabase) {
         if (failDatabase)
             throw new SimulatedFailureException("Database failed to commit");
     }
 
-    private void deduplicate(UUID eventId) throws DuplicateEventException {
-        try {
-            processedEventRepository.saveAndFlush(new ProcessedInboundEvent(eventId));
-            log.debug("Event persisted with Id: {}", eventId);
-        } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
-            log.warn("Event already processed: {}", eventId);
-            throw new DuplicateEventException(eventId);
+    public static void validate(InboundEvent event) throws InvalidEventException {
+        if (event == null || event.getData() == null) {
+            throw new InvalidEventException("event has no data");
         }
     }
 
-    private void writeOrder(String payload) {
-        PurchaseOrder purchaseOrder = PurchaseOrder.builder()
-                .name(payload)
+    static PurchaseOrder newOrder(String key, StoredPayload payload) {
+        return PurchaseOrder.builder()
+                .name(payload.getColumnText())
+                .encodedPayload(payload.getBinary())
+                .orderKey(key)
                 .timestamp(System.currentTimeMillis())
                 .build();
-        purchaseOrderRepository.save(purchaseOrder);
     }
 
-    private void writeOutboxEvent(String payload) {
-        OutboxEvent outboxEvent = OutboxEvent.builder()
+    static OutboxEvent newOutboxEvent(String key, StoredPayload payload) {
+        return OutboxEvent.builder()
                 .version("v1")
-                .payload(payload)
-                .destination("demo-outbox-outbound")
+                .aggregateKey(key)
+                .payload(payload.getColumnText())
+                .encodedPayload(payload.getBinary())
+                .destination(OUTBOX_DESTINATION)
                 .timestamp(System.currentTimeMillis())
                 .build();
-        UUID outboxEventId = outboxEventRepository.save(outboxEvent).getId();
+    }
+
+    private void writeOrder(String key, StoredPayload payload) {
+        PurchaseOrder order = newOrder(key, payload);
+        appendOnlyRepository.insertOrder(order);
+        orderAggregates.record(order.getOrderKey(), order.getTimestamp());
+    }
+
+    private void writeOutboxEvent(String key, StoredPayload payload) {
+        UUID outboxEventId = appendOnlyRepository.insertOutboxEvent(newOutboxEvent(key, payload));
         log.debug("Event persisted to transactional outbox with Id: {}", outboxEventId);
     }
 
@@ -0,0 +1,99 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.model.event.outbound.OutboxRelayWatermark;
+import demo.idempotentconsumer.repository.OutboxPartitionRepository;
+import demo.idempotentconsumer.repository.OutboxPartitionRepository.OutboxPartition;
+import demo.idempotentconsumer.repository.OutboxRelayWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Keeps the outbox partitioned by day. Partitions for the coming days are created ahead of time, so inserts never wait
+ * for one, and partitions whose events are all published and past the retention period are dropped as a whole instead
+ * of deleting their rows.
+ *
+ * Partitions are only dropped once their events are known to be published. With the polling relay enabled, that is
+ * when they are behind its watermark: a partition holding any event after the watermark is kept, however old, so
+ * events committed late are still relayed. Without it nothing confirms publication, so partitions are kept unless
+ * {@code outbox.partitioning.dropWithoutRelay} opts in to dropping them once they are past the retention period, e.g.
+ * when the outbox is published by change data capture.
+ */
+@Service
+@Slf4j
+public class OutboxPartitionMaintenance {
+
+    private static final DateTimeFormatter PARTITION_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    private final OutboxPartitionRepository partitionRepository;
+    private final OutboxRelayWatermarkRepository watermarkRepository;
+    private final boolean enabled;
+    private final int daysAhead;
+    private final Duration retention;
+    private final boolean relayEnabled;
+    private final boolean dropWithoutRelay;
+
+    @Autowired
+    public OutboxPartitionMaintenance(
+            OutboxPartitionRepository partitionRepository,
+            OutboxRelayWatermarkRepository watermarkRepository,
+            @Value("${outbox.partitioning.enabled}") boolean enabled,
+            @Value("${outbox.partitioning.daysAhead}") int daysAhead,
+            @Value("${outbox.partitioning.retention}") Duration retention,
+            @Value("${outbox.relay.enabled}") boolean relayEnabled,
+            @Value("${outbox.partitioning.dropWithoutRelay}") boolean dropWithoutRelay
+    ) {
+        this.partitionRepository = partitionRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.enabled = enabled;
+        this.daysAhead = daysAhead;
+        this.retention = retention;
+        this.relayEnabled = relayEnabled;
+        this.dropWithoutRelay = dropWithoutRelay;
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.partitioning.maintenanceIntervalMs}")
+    public void maintain() {
+        if (!enabled) return;
+
+        createUpcomingPartitions();
+        dropPublishedPartitions();
+    }
+
+    private void createUpcomingPartitions() {
+        LocalDate today = LocalDate.now(ZoneOffset.UTC);
+        for (int i = 0; i <= daysAhead; i++) {
+            LocalDate day = today.plusDays(i);
+            partitionRepository.createPartition(
+                    "outbox_event_p" + day.format(PARTITION_SUFFIX),
+                    day.atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli(),
+                    day.plusDays(1).atStartOfDay(ZoneOffset.UTC).toInstant().toEpochMilli());
+        }
+    }
+
+    private void dropPublishedPartitions() {
+        if (!relayEnabled && !dropWithoutRelay) return;
+
+        long publishedBefore = System.currentTimeMillis() - retention.toMillis();
+        OutboxRelayWatermark watermark = relayEnabled
+                ? watermarkRepository.findById(OutboxRelay.RELAY).orElseGet(() -> new OutboxRelayWatermark(OutboxRelay.RELAY, 0, 0))
+                : null;
+
+        for (OutboxPartition partition : partitionRepository.findPartitions()) {
+            if (partition.getUpperBound() == null || partition.getUpperBound() > publishedBefore) continue;
+            if (watermark != null && partitionRepository.hasEventsAfter(partition.getName(), watermark.getTransactionId(), watermark.getSequenceNumber())) {
+                log.warn("Keeping outbox partition {}, it holds events not relayed yet", partition.getName());
+                continue;
+            }
+            log.info("Dropping published outbox partition {}", partition.getName());
+            partitionRepository.dropPartition(partition.getName());
+        }
+    }
+}
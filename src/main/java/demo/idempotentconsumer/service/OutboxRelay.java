@@ -0,0 +1,168 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
+import demo.idempotentconsumer.model.event.outbound.OutboxRelayWatermark;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.OutboxRelayWatermarkRepository;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.utils.Utils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Polling alternative to Debezium for publishing the transactional outbox.
+ *
+ * Each batch of outbox events is split into lanes by the hash of their aggregate key, and the lanes are published in
+ * parallel. Within a lane events are published in outbox order, which doesn't depend on their timestamps, so events
+ * with the same key keep their order even when written within the same millisecond. The hash is the one of Kafka's
+ * default partitioner, so with as many lanes as partitions each lane feeds one partition.
+ *
+ * Published events are not deleted. The relay keeps a watermark instead, which only moves past an event once it and
+ * all events before it are published; events after a failed one are published again with the next poll. Sequence
+ * numbers are taken before their transaction commits, so they don't order events by commit. Events are therefore read
+ * in the order of the Postgres transaction that inserted them, then of their sequence number, and only once every
+ * transaction up to theirs has ended, so no event can become visible behind the watermark. Events with the same key
+ * are written by one transaction after the other, so this keeps their order. A long-running transaction holds the
+ * relay back, but never makes it skip events. Without transaction Ids ({@code outbox.relay.transactionIds: false})
+ * only events older than {@code outbox.relay.settleMs} are read instead, so events committed later are skipped.
+ */
+@Service
+@Slf4j
+public class OutboxRelay {
+
+    static final String RELAY = "outbox-relay";
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final OutboxRelayWatermarkRepository watermarkRepository;
+    private final KafkaClient kafkaClient;
+    private final PayloadService payloadService;
+    private final boolean enabled;
+    private final int batchSize;
+    private final boolean transactionIds;
+    private final long settleMs;
+    private final ExecutorService[] lanes;
+
+    @Autowired
+    public OutboxRelay(
+            OutboxEventRepository outboxEventRepository,
+            OutboxRelayWatermarkRepository watermarkRepository,
+            KafkaClient kafkaClient,
+            PayloadService payloadService,
+            @Value("${outbox.relay.enabled}") boolean enabled,
+            @Value("${outbox.relay.batchSize}") int batchSize,
+            @Value("${outbox.relay.transactionIds}") boolean transactionIds,
+            @Value("${outbox.relay.settleMs}") long settleMs,
+            @Value("${outbox.relay.lanes}") int laneCount
+    ) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.watermarkRepository = watermarkRepository;
+        this.kafkaClient = kafkaClient;
+        this.payloadService = payloadService;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.transactionIds = transactionIds;
+        this.settleMs = settleMs;
+        this.lanes = new ExecutorService[laneCount];
+        AtomicInteger laneIndex = new AtomicInteger();
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "outbox-relay-lane-" + laneIndex.getAndIncrement()));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${outbox.relay.pollIntervalMs}")
+    public void relay() {
+        if (!enabled) return;
+
+        OutboxRelayWatermark watermark = watermarkRepository.findById(RELAY)
+                .orElseGet(() -> new OutboxRelayWatermark(RELAY, 0, 0));
+        List<OutboxEvent> batch = outboxEventRepository.findAfter(
+                watermark.getTransactionId(),
+                watermark.getSequenceNumber(),
+                transactionIds ? outboxEventRepository.findVisibleBefore() : Long.MAX_VALUE,
+                transactionIds ? Long.MAX_VALUE : System.currentTimeMillis() - settleMs,
+                PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) return;
+
+        List<List<OutboxEvent>> eventsByLane = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) eventsByLane.add(new ArrayList<>());
+        batch.forEach(event -> eventsByLane.get(laneOf(event)).add(event));
+
+        List<CompletableFuture<List<UUID>>> lanesPublished = new ArrayList<>(lanes.length);
+        for (int i = 0; i < lanes.length; i++) {
+            List<OutboxEvent> laneEvents = eventsByLane.get(i);
+            if (!laneEvents.isEmpty()) {
+                lanesPublished.add(CompletableFuture.supplyAsync(() -> publish(laneEvents), lanes[i]));
+            }
+        }
+
+        Set<UUID> published = new HashSet<>(batch.size());
+        lanesPublished.forEach(lane -> published.addAll(lane.join()));
+
+        OutboxEvent last = null;
+        for (OutboxEvent event : batch) {
+            if (!published.contains(event.getId())) break;
+            last = event;
+        }
+        if (last != null) {
+            watermark.setTransactionId(last.getTransactionId());
+            watermark.setSequenceNumber(last.getSequenceNumber());
+            watermarkRepository.save(watermark);
+        }
+        log.debug("Relayed {} of {} outbox events over {} lanes", published.size(), batch.size(), lanesPublished.size());
+    }
+
+    /**
+     * Publishes the events of a lane in order, and returns the Ids of those published before the first failure.
+     */
+    private List<UUID> publish(List<OutboxEvent> events) {
+        // Sends are pipelined; the idempotent producer keeps them in order per partition.
+        List<CompletableFuture<SendResult<String, String>>> sends = new ArrayList<>(events.size());
+        for (OutboxEvent event : events) {
+            sends.add(kafkaClient.sendMessageAsync(
+                    event.getDestination(),
+                    event.getId(),
+                    event.getAggregateKey(),
+                    payloadService.toMessage(event.getPayload(), event.getEncodedPayload())));
+        }
+
+        List<UUID> published = new ArrayList<>(events.size());
+        for (int i = 0; i < events.size(); i++) {
+            try {
+                sends.get(i).join();
+                published.add(events.get(i).getId());
+            } catch (RuntimeException e) {
+                log.warn("Failed to relay outbox event {}, retrying with the next poll", events.get(i).getId());
+                break;
+            }
+        }
+        return published;
+    }
+
+    private int laneOf(OutboxEvent event) {
+        if (event.getAggregateKey() == null) return 0;
+        byte[] key = event.getAggregateKey().getBytes(StandardCharsets.UTF_8);
+        return Utils.toPositive(Utils.murmur2(key)) % lanes.length;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (ExecutorService lane : lanes) lane.shutdown();
+    }
+}
@@ -0,0 +1,84 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.configuration.mapper.InboundEventCodec;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Decides how event payloads are stored in the order and outbox rows.
+ *
+ * With the {@code text} encoding the payload is stored as is in the text columns. With the {@code binary} encoding
+ * the whole event is stored compactly encoded and compressed in the binary columns instead. Either way payloads whose
+ * stored form is large are claim-checked, which for the binary encoding is decided on the encoded size, so that
+ * payloads that compress well stay inline. Outbound messages carry the (claim-checked) payload as text.
+ */
+@Service
+@Slf4j
+public class PayloadService {
+
+    public enum Encoding { TEXT, BINARY }
+
+    private final ClaimCheckService claimCheckService;
+    private final Encoding encoding;
+
+    @Autowired
+    public PayloadService(
+            ClaimCheckService claimCheckService,
+            @Value("${payload.encoding}") Encoding encoding
+    ) {
+        this.claimCheckService = claimCheckService;
+        this.encoding = encoding;
+    }
+
+    public StoredPayload store(InboundEvent event) {
+        if (encoding == Encoding.TEXT) return new StoredPayload(claimCheckService.checkIn(event.getData()), null);
+
+        byte[] binary = InboundEventCodec.encode(event);
+        String text = claimCheckService.checkIn(event.getData(), binary.length);
+        if (ClaimCheckService.isReference(text)) {
+            binary = InboundEventCodec.encode(InboundEvent.builder()
+                    .id(event.getId())
+                    .data(text)
+                    .build());
+        }
+        log.debug("Payload encoded to {} bytes", binary.length);
+        return new StoredPayload(text, binary);
+    }
+
+    /**
+     * Returns the payload of a row as it is sent in outbound messages, i.e. still claim-checked.
+     */
+    public String toMessage(String text, byte[] binary) {
+        return binary != null ? InboundEventCodec.decode(binary).getData() : text;
+    }
+
+    /**
+     * Returns the original payload of a row, whichever way it was stored.
+     */
+    public String load(String text, byte[] binary) {
+        return claimCheckService.checkOut(toMessage(text, binary));
+    }
+
+    @Getter
+    @RequiredArgsConstructor
+    public static class StoredPayload {
+        /** The claim-checked payload, as sent in outbound messages. */
+        private final String text;
+        /** The encoded event, or null when stored as text. */
+        private final byte[] binary;
+
+        public boolean isBinary() {
+            return binary != null;
+        }
+
+        /** The value of the text column, which is left empty when the payload is stored in the binary column. */
+        public String getColumnText() {
+            return isBinary() ? null : text;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import org.apache.kafka.common.TopicPartition;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Records which inbound events have been processed. The backend is selected with {@code deduplication.backend}.
+ *
+ * Events are recorded within the transaction processing them, and only count as processed once it commits. The
+ * source is the partition the event was consumed from, or null if it wasn't consumed from Kafka.
+ */
+public interface ProcessedEventStore {
+
+    /**
+     * Records an event as processed.
+     *
+     * @throws DuplicateEventException if the event was processed already.
+     */
+    void add(UUID eventId, TopicPartition source) throws DuplicateEventException;
+
+    /**
+     * Returns whether the event was processed already. Unlike {@link #add} this doesn't record the event, so it can be
+     * called outside a transaction to reject most duplicates before doing any work for them.
+     */
+    boolean contains(UUID eventId, TopicPartition source);
+
+    /**
+     * Records events as processed, skipping those processed already, and returns how many were newly recorded.
+     */
+    int addAll(Map<UUID, TopicPartition> eventSources);
+
+    /**
+     * Prepares the state of partitions assigned to this instance.
+     */
+    void onPartitionsAssigned(Collection<TopicPartition> partitions);
+
+    /**
+     * Drops the state of partitions no longer assigned to this instance.
+     */
+    void onPartitionsRevoked(Collection<TopicPartition> partitions);
+}
@@ -0,0 +1,115 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.repository.PurchaseOrderReadRepository;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+/**
+ * Serves purchase orders to the read API, with their payloads decoded.
+ */
+@Service
+@Slf4j
+public class PurchaseOrderQueryService {
+
+    public static final String PURCHASE_ORDERS_CACHE = "purchaseOrders";
+
+    private final PurchaseOrderReadRepository purchaseOrderReadRepository;
+    private final PayloadService payloadService;
+
+    @Autowired
+    public PurchaseOrderQueryService(
+            PurchaseOrderReadRepository purchaseOrderReadRepository,
+            PayloadService payloadService
+    ) {
+        this.purchaseOrderReadRepository = purchaseOrderReadRepository;
+        this.payloadService = payloadService;
+    }
+
+    /**
+     * Orders are never updated once written, so found orders can be cached until evicted by size or age.
+     */
+    @Cacheable(cacheNames = PURCHASE_ORDERS_CACHE, unless = "#result == null")
+    public Optional<PurchaseOrderView> findById(UUID id) {
+        return purchaseOrderReadRepository.findById(id).map(this::toView);
+    }
+
+    /**
+     * Returns the page of orders following the cursor, or the first page if the cursor is null.
+     */
+    public PurchaseOrderPage findPage(String cursor, int limit) {
+        List<PurchaseOrder> orders = cursor == null
+                ? purchaseOrderReadRepository.findFirst(limit)
+                : purchaseOrderReadRepository.findAfter(Cursor.timestampOf(cursor), Cursor.idOf(cursor), limit);
+
+        String nextCursor = orders.size() < limit ? null : Cursor.of(orders.get(orders.size() - 1));
+        return new PurchaseOrderPage(orders.stream().map(this::toView).toList(), nextCursor);
+    }
+
+    public void export(Consumer<PurchaseOrderView> consumer) {
+        purchaseOrderReadRepository.streamAll(order -> consumer.accept(toView(order)));
+    }
+
+    private PurchaseOrderView toView(PurchaseOrder order) {
+        return PurchaseOrderView.builder()
+                .id(order.getId())
+                .timestamp(order.getTimestamp())
+                .payload(payloadService.load(order.getName(), order.getEncodedPayload()))
+                .build();
+    }
+
+    @Builder
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PurchaseOrderView {
+        private UUID id;
+        private long timestamp;
+        private String payload;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class PurchaseOrderPage {
+        private List<PurchaseOrderView> orders;
+        /** Pass as cursor to fetch the next page, null on the last page. */
+        private String nextCursor;
+    }
+
+    /**
+     * Opaque position of an order in (timestamp, id) order.
+     */
+    static class Cursor {
+        private static final char SEPARATOR = '_';
+
+        static String of(PurchaseOrder order) {
+            return order.getTimestamp() + String.valueOf(SEPARATOR) + order.getId();
+        }
+
+        static long timestampOf(String cursor) {
+            return Long.parseLong(cursor.substring(0, separatorIndex(cursor)));
+        }
+
+        static UUID idOf(String cursor) {
+            return UUID.fromString(cursor.substring(separatorIndex(cursor) + 1));
+        }
+
+        private static int separatorIndex(String cursor) {
+            int index = cursor.indexOf(SEPARATOR);
+            if (index < 0) throw new IllegalArgumentException("Malformed cursor: " + cursor);
+            return index;
+        }
+    }
+}
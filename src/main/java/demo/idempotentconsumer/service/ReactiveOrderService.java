@@ -0,0 +1,138 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.exception.DuplicateEventException;
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import demo.idempotentconsumer.repository.ReactiveAppendOnlyRepository;
+import demo.idempotentconsumer.service.PayloadService.StoredPayload;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import reactor.kafka.sender.KafkaSender;
+import reactor.kafka.sender.SenderRecord;
+
+import java.util.UUID;
+
+/**
+ * The idempotent flows of {@link OrderService}, without blocking a thread on I/O. The event Id, the order and the
+ * outbox event are written over R2DBC in a reactive transaction, and outbound messages are sent by a reactive producer
+ * before that transaction commits, so the takeaways of both flows are the same.
+ *
+ * Processed events are rejected by the {@link RecentEventIdCache} before the transaction begins if possible, and
+ * otherwise by the primary key, as in the {@link DatabaseProcessedEventStore}. Ids are added to the cache once their
+ * transaction commits.
+ *
+ * Only the blob store is blocking, so payloads are stored on the bounded elastic scheduler before the transaction
+ * begins.
+ */
+@Service
+@Slf4j
+public class ReactiveOrderService {
+
+    private final ReactiveAppendOnlyRepository reactiveAppendOnlyRepository;
+    private final TransactionalOperator reactiveTransactionalOperator;
+    private final KafkaSender<String, String> reactiveKafkaSender;
+    private final KafkaClient kafkaClient;
+    private final PayloadService payloadService;
+    private final DuplicateEventReporter duplicateEventReporter;
+    private final OrderAggregates orderAggregates;
+    private final RecentEventIdCache recentEventIdCache;
+
+    @Autowired
+    public ReactiveOrderService(
+            ReactiveAppendOnlyRepository reactiveAppendOnlyRepository,
+            TransactionalOperator reactiveTransactionalOperator,
+            KafkaSender<String, String> reactiveKafkaSender,
+            KafkaClient kafkaClient,
+            PayloadService payloadService,
+            DuplicateEventReporter duplicateEventReporter,
+            OrderAggregates orderAggregates,
+            RecentEventIdCache recentEventIdCache
+    ) {
+        this.reactiveAppendOnlyRepository = reactiveAppendOnlyRepository;
+        this.reactiveTransactionalOperator = reactiveTransactionalOperator;
+        this.reactiveKafkaSender = reactiveKafkaSender;
+        this.kafkaClient = kafkaClient;
+        this.payloadService = payloadService;
+        this.duplicateEventReporter = duplicateEventReporter;
+        this.orderAggregates = orderAggregates;
+        this.recentEventIdCache = recentEventIdCache;
+    }
+
+    public Mono<Void> processIdempotent(
+            UUID eventId,
+            TopicPartition source,
+            String key,
+            InboundEvent event
+    ) {
+        return store(event).flatMap(payload -> {
+            PurchaseOrder order = OrderService.newOrder(key, payload);
+            return recordProcessed(eventId, source)
+                    .then(reactiveAppendOnlyRepository.insertOrder(order))
+                    .then(send(key, payload))
+                    .as(reactiveTransactionalOperator::transactional)
+                    .then(Mono.fromRunnable(() -> recordCommitted(eventId, source, order)));
+        });
+    }
+
+    public Mono<Void> processIdempotentAndOutbox(
+            UUID eventId,
+            TopicPartition source,
+            String key,
+            InboundEvent event
+    ) {
+        return store(event).flatMap(payload -> {
+            PurchaseOrder order = OrderService.newOrder(key, payload);
+            return recordProcessed(eventId, source)
+                    .then(reactiveAppendOnlyRepository.insertOrder(order))
+                    .then(reactiveAppendOnlyRepository.insertOutboxEvent(OrderService.newOutboxEvent(key, payload)))
+                    .doOnNext(outboxEventId -> log.debug("Event persisted to transactional outbox with Id: {}", outboxEventId))
+                    .then()
+                    .as(reactiveTransactionalOperator::transactional)
+                    .then(Mono.fromRunnable(() -> recordCommitted(eventId, source, order)));
+        });
+    }
+
+    private Mono<StoredPayload> store(InboundEvent event) {
+        return Mono.fromCallable(() -> {
+                    log.debug("Processing idempotent event: {}", event);
+                    OrderService.validate(event);
+                    return payloadService.store(event);
+                })
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    private Mono<Void> recordProcessed(UUID eventId, TopicPartition source) {
+        if (recentEventIdCache.contains(source, eventId)) {
+            duplicateEventReporter.record(source);
+            return Mono.error(new DuplicateEventException(eventId));
+        }
+        ProcessedInboundEvent processedEvent =
+                new ProcessedInboundEvent(eventId, source.topic(), source.partition(), System.currentTimeMillis());
+        return reactiveAppendOnlyRepository.insertProcessedEvent(processedEvent)
+                .onErrorMap(DataIntegrityViolationException.class, e -> {
+                    duplicateEventReporter.record(source);
+                    return new DuplicateEventException(eventId);
+                });
+    }
+
+    private void recordCommitted(UUID eventId, TopicPartition source, PurchaseOrder order) {
+        recentEventIdCache.add(source, eventId);
+        orderAggregates.record(order.getOrderKey(), order.getTimestamp());
+    }
+
+    private Mono<Void> send(String key, StoredPayload payload) {
+        return reactiveKafkaSender.send(Mono.just(SenderRecord.create(kafkaClient.outboundRecord(key, payload.getText()), key)))
+                .doOnNext(result -> log.debug("Sent record(key={}) meta(topic={}, partition={}, offset={})",
+                        result.correlationMetadata(), result.recordMetadata().topic(),
+                        result.recordMetadata().partition(), result.recordMetadata().offset()))
+                .then();
+    }
+}
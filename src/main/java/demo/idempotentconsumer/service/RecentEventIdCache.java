@@ -0,0 +1,76 @@
+package demo.idempotentconsumer.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process view of the recently processed event Ids of the partitions this instance owns.
+ *
+ * A hit means the event was processed already, so redeliveries are rejected without a database round trip. A miss
+ * proves nothing, so the database remains the source of truth. Partitions are loaded when assigned and dropped when
+ * revoked, and each partition keeps at most its most recent {@code deduplication.warm-up.maxIdsPerPartition} Ids, so
+ * memory stays proportional to the owned partitions.
+ */
+@Slf4j
+@Component
+public class RecentEventIdCache {
+
+    private final Map<TopicPartition, Set<UUID>> eventIdsByPartition = new ConcurrentHashMap<>();
+    private final int maxIdsPerPartition;
+
+    @Autowired
+    public RecentEventIdCache(@Value("${deduplication.warm-up.maxIdsPerPartition}") int maxIdsPerPartition) {
+        this.maxIdsPerPartition = maxIdsPerPartition;
+    }
+
+    /**
+     * Loads the Ids of an assigned partition, given most recent first.
+     */
+    public void load(TopicPartition partition, List<UUID> recentEventIds) {
+        Set<UUID> eventIds = newBoundedSet();
+        for (int i = recentEventIds.size() - 1; i >= 0; i--) {
+            eventIds.add(recentEventIds.get(i));
+        }
+        eventIdsByPartition.put(partition, eventIds);
+        log.debug("Loaded {} recent event Ids for {}", eventIds.size(), partition);
+    }
+
+    public void evict(Collection<TopicPartition> partitions) {
+        partitions.forEach(eventIdsByPartition::remove);
+        log.debug("Evicted recent event Ids for {}", partitions);
+    }
+
+    public boolean contains(TopicPartition partition, UUID eventId) {
+        Set<UUID> eventIds = eventIdsByPartition.get(partition);
+        return eventIds != null && eventIds.contains(eventId);
+    }
+
+    /**
+     * Records a processed event, if its partition is owned by this instance.
+     */
+    public void add(TopicPartition partition, UUID eventId) {
+        Set<UUID> eventIds = eventIdsByPartition.get(partition);
+        if (eventIds != null) eventIds.add(eventId);
+    }
+
+    private Set<UUID> newBoundedSet() {
+        return Collections.synchronizedSet(Collections.newSetFromMap(new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Boolean> eldest) {
+                return size() > maxIdsPerPartition;
+            }
+        }));
+    }
+}
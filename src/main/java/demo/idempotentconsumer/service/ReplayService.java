@@ -0,0 +1,118 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.configuration.mapper.MappingException;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.ReplayRepository;
+import demo.idempotentconsumer.repository.ReplayRepository.StagedEvent;
+import demo.idempotentconsumer.service.PayloadService.StoredPayload;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Replays chunks of inbound records with the semantics of the idempotent consumer with outbox, but set-based: each
+ * chunk is deduplicated and written in a handful of statements instead of a transaction per record. Meant for
+ * replaying a topic from an earlier offset, where most records are duplicates.
+ */
+@Service
+@Slf4j
+public class ReplayService {
+
+    private final ReplayRepository replayRepository;
+    private final PayloadService payloadService;
+    private final OrderAggregates orderAggregates;
+
+    @Autowired
+    public ReplayService(
+            ReplayRepository replayRepository,
+            PayloadService payloadService,
+            OrderAggregates orderAggregates
+    ) {
+        this.replayRepository = replayRepository;
+        this.payloadService = payloadService;
+        this.orderAggregates = orderAggregates;
+    }
+
+    /**
+     * Events are deduplicated before their payloads are stored, so that duplicates don't write claim-check blobs. The
+     * insert still skips events processed concurrently.
+     */
+    @Transactional
+    public void replay(List<ConsumerRecord<String, String>> records) {
+        // The first record of each event Id, in the order they were consumed
+        Map<UUID, ParsedRecord> parsedRecords = new LinkedHashMap<>();
+        for (ConsumerRecord<String, String> record : records) {
+            try {
+                ParsedRecord parsedRecord = parse(record);
+                parsedRecords.putIfAbsent(parsedRecord.getEventId(), parsedRecord);
+            } catch (InvalidEventException | MappingException e) {
+                // Such records failed on their first delivery already.
+                log.warn("Skipping invalid record {}-{}@{}: {}", record.topic(), record.partition(), record.offset(), e.getMessage());
+            }
+        }
+        if (parsedRecords.isEmpty()) return;
+
+        Set<UUID> processedEventIds = replayRepository.findProcessedEventIds(parsedRecords.keySet());
+        List<StagedEvent> events = new ArrayList<>(parsedRecords.size());
+        for (ParsedRecord parsedRecord : parsedRecords.values()) {
+            if (!processedEventIds.contains(parsedRecord.getEventId())) {
+                events.add(stage(parsedRecord));
+            }
+        }
+
+        int inserted = 0;
+        if (!events.isEmpty()) {
+            long now = System.currentTimeMillis();
+            List<String> newEventKeys = replayRepository.insertNewEvents(events, OrderService.OUTBOX_DESTINATION, now);
+            orderAggregates.record(newEventKeys, now);
+            inserted = newEventKeys.size();
+        }
+        log.info("Replayed {} records: {} new, {} duplicates", records.size(), inserted, parsedRecords.size() - inserted);
+    }
+
+    private ParsedRecord parse(ConsumerRecord<String, String> record) {
+        Header eventIdHeader = record.headers().lastHeader(KafkaClient.EVENT_ID_HEADER_KEY);
+        UUID eventId = EventIds.parse(eventIdHeader != null ? eventIdHeader.value() : null);
+        InboundEvent event = JsonMapper.readFromJson(record.value(), InboundEvent.class);
+        if (event == null || event.getData() == null) {
+            throw new InvalidEventException("event has no data");
+        }
+        return new ParsedRecord(record, eventId, event);
+    }
+
+    private StagedEvent stage(ParsedRecord parsedRecord) {
+        ConsumerRecord<String, String> record = parsedRecord.getRecord();
+        StoredPayload payload = payloadService.store(parsedRecord.getEvent());
+
+        return StagedEvent.builder()
+                .eventId(parsedRecord.getEventId())
+                .topic(record.topic())
+                .sourcePartition(record.partition())
+                .key(record.key())
+                .payload(payload.getColumnText())
+                .encodedPayload(payload.getBinary())
+                .build();
+    }
+
+    @Value
+    private static class ParsedRecord {
+        ConsumerRecord<String, String> record;
+        UUID eventId;
+        InboundEvent event;
+    }
+}
@@ -0,0 +1,23 @@
+-- Schema as previously created by Hibernate (ddl-auto: update).
+-- Databases created that way are baselined at this version instead of running it.
+
+create table if not exists purchase_order (
+    id        uuid         not null,
+    name      varchar(255) not null,
+    timestamp bigint       not null,
+    primary key (id)
+);
+
+create table if not exists outbox_event (
+    id          uuid          not null,
+    payload     varchar(4096) not null,
+    timestamp   bigint        not null,
+    destination varchar(255)  not null,
+    version     varchar(255),
+    primary key (id)
+);
+
+create table if not exists processed_inbound_event (
+    eventid uuid not null,
+    primary key (eventid)
+);
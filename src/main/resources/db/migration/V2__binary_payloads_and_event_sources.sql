@@ -0,0 +1,15 @@
+-- Payloads may be stored encoded in a bytea column instead of the text column, which is then left empty.
+alter table purchase_order add column if not exists encoded_payload bytea;
+alter table purchase_order alter column name drop not null;
+
+alter table outbox_event add column if not exists encoded_payload bytea;
+alter table outbox_event alter column payload drop not null;
+
+-- Processed events record the partition they were consumed from, so the recent Ids of a partition can be warmed up
+-- when it is assigned.
+alter table processed_inbound_event add column if not exists topic varchar(255);
+alter table processed_inbound_event add column if not exists source_partition integer;
+alter table processed_inbound_event add column if not exists processed_at bigint;
+
+create index if not exists processed_inbound_event_source_idx
+    on processed_inbound_event (topic, source_partition, processed_at);
@@ -0,0 +1,2 @@
+-- Supports keyset pagination of the read API on (timestamp, id)
+create index if not exists purchase_order_timestamp_id_idx on purchase_order (timestamp, id);
@@ -0,0 +1,4 @@
+-- Events are relayed in parallel lanes hashed on the aggregate key, in order per key
+alter table outbox_event add column if not exists aggregate_key varchar(255);
+
+create index if not exists outbox_event_timestamp_idx on outbox_event (timestamp);
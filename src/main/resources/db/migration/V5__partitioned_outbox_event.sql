@@ -0,0 +1,41 @@
+-- The outbox is range-partitioned by day on its epoch-millisecond timestamp. Published events are no longer deleted
+-- row by row: the relay keeps a watermark instead, and fully published partitions are dropped as a whole.
+alter table outbox_event rename to outbox_event_unpartitioned;
+alter index if exists outbox_event_timestamp_idx rename to outbox_event_unpartitioned_timestamp_idx;
+
+create table outbox_event (
+    id              uuid          not null,
+    payload         varchar(4096),
+    encoded_payload bytea,
+    timestamp       bigint        not null,
+    destination     varchar(255)  not null,
+    version         varchar(255),
+    aggregate_key   varchar(255),
+    primary key (timestamp, id)
+) partition by range (timestamp);
+
+-- Existing events go to a partition ending today; partitions from today on are created by OutboxPartitionMaintenance,
+-- the first few right here.
+do $$
+declare
+    day_ms constant bigint := 86400000;
+    today  bigint := (extract(epoch from date_trunc('day', now() at time zone 'utc')) * 1000)::bigint;
+begin
+    execute format('create table outbox_event_legacy partition of outbox_event for values from (minvalue) to (%s)', today);
+    for i in 0..2 loop
+        execute format('create table outbox_event_p%s partition of outbox_event for values from (%s) to (%s)',
+                to_char(to_timestamp((today + i * day_ms) / 1000) at time zone 'utc', 'YYYYMMDD'),
+                today + i * day_ms, today + (i + 1) * day_ms);
+    end loop;
+end $$;
+
+insert into outbox_event (id, payload, encoded_payload, timestamp, destination, version, aggregate_key)
+select id, payload, encoded_payload, timestamp, destination, version, aggregate_key from outbox_event_unpartitioned;
+
+drop table outbox_event_unpartitioned;
+
+create table outbox_relay_watermark (
+    relay     varchar(255) not null primary key,
+    timestamp bigint       not null,
+    event_id  uuid         not null
+);
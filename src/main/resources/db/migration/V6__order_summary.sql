@@ -0,0 +1,11 @@
+-- Orders carry the key of the event they were created from, so that the order summary can be rebuilt from them
+alter table purchase_order add column if not exists order_key varchar(255);
+
+-- Order counts per time window and key, flushed from memory by OrderAggregates. Orders without a key are counted
+-- under the empty key.
+create table if not exists order_summary (
+    window_start bigint       not null,
+    order_key    varchar(255) not null,
+    order_count  bigint       not null,
+    primary key (window_start, order_key)
+);
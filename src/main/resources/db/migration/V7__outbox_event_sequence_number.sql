@@ -0,0 +1,28 @@
+-- Outbox events are numbered as they are inserted, and relayed in that order. Timestamps and Ids don't order events
+-- written within the same millisecond, so events with the same key could be relayed out of order.
+create sequence if not exists outbox_event_sequence_number_seq as bigint;
+
+alter table outbox_event add column sequence_number bigint;
+
+-- Existing events keep the (timestamp, id) order they were relayed in so far
+update outbox_event e set sequence_number = n.sequence_number
+from (select id, timestamp, row_number() over (order by timestamp, id) as sequence_number from outbox_event) n
+where e.timestamp = n.timestamp and e.id = n.id;
+
+select setval('outbox_event_sequence_number_seq', coalesce(max(sequence_number), 0) + 1, false) from outbox_event;
+
+alter table outbox_event alter column sequence_number set default nextval('outbox_event_sequence_number_seq');
+alter table outbox_event alter column sequence_number set not null;
+alter sequence outbox_event_sequence_number_seq owned by outbox_event.sequence_number;
+
+create index if not exists outbox_event_sequence_number_idx on outbox_event (sequence_number);
+
+-- The relay watermark becomes the sequence number of the last relayed event. Its timestamp is kept, for the partition
+-- maintenance.
+alter table outbox_relay_watermark add column sequence_number bigint;
+
+update outbox_relay_watermark w set sequence_number = coalesce(
+        (select max(e.sequence_number) from outbox_event e where (e.timestamp, e.id) <= (w.timestamp, w.event_id)), 0);
+
+alter table outbox_relay_watermark alter column sequence_number set not null;
+alter table outbox_relay_watermark drop column event_id;
@@ -0,0 +1,14 @@
+-- Sequence numbers are taken before their transaction commits, so an event can become visible after events with a
+-- higher number have been relayed already. Events therefore record the Id of their transaction, and the relay only
+-- reads events of transactions older than the oldest one still running, in (transaction Id, sequence number) order.
+-- Existing events get transaction Id 0, so they are relayed first, in their current order.
+alter table outbox_event add column transaction_id bigint not null default 0;
+alter table outbox_event alter column transaction_id set default pg_current_xact_id()::text::bigint;
+
+drop index if exists outbox_event_sequence_number_idx;
+create index if not exists outbox_event_transaction_id_idx on outbox_event (transaction_id, sequence_number);
+
+-- The watermark moves to (transaction Id, sequence number). Partitions are no longer dropped by the timestamp of the
+-- last relayed event, but once they hold no events after the watermark.
+alter table outbox_relay_watermark add column transaction_id bigint not null default 0;
+alter table outbox_relay_watermark drop column timestamp;
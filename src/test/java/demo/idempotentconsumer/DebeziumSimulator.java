@@ -2,9 +2,11 @@ package demo.idempotentconsumer;
 
 import demo.idempotentconsumer.model.event.inbound.InboundEvent;
 import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.service.PayloadService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.data.domain.Pageable;
 import org.springframework.kafka.KafkaException;
 import org.springframework.scheduling.annotation.Scheduled;
 
@@ -17,27 +19,43 @@ public class DebeziumSimulator extends KafkaTestBase {
     @Autowired
     private OutboxEventRepository outboxEventRepository;
 
+    @Autowired
+    private PayloadService payloadService;
+
     private static final String DEMO_OUTBOUND_TOPIC = "demo-outbound-topic";
 
     /**
-     * This method is used to simulate the Debezium connector. It reads all the events from the outbox_event table and
-     * sends them to the demo-outbound-topic.
+     * Outbox events are read once they are older than this, so that events still being committed aren't skipped.
+     */
+    private static final long SETTLE_MS = 1000;
+
+    /**
+     * The last event sent. Like Debezium's offset, it replaces deleting the sent events.
+     */
+    private long watermarkTransactionId = 0;
+    private long watermarkSequenceNumber = 0;
+
+    /**
+     * This method is used to simulate the Debezium connector. It reads the events added to the outbox_event table since
+     * the last run and sends them to the demo-outbound-topic.
      */
     @Scheduled(fixedDelay = 100)
     public void debeziumSimulatorRunner() {
-        outboxEventRepository.findAll().forEach(outboxEvent -> {
-            InboundEvent inboundEvent = InboundEvent.builder()
-                    .id(outboxEvent.getId().toString())
-                    .data(outboxEvent.getPayload())
-                    .build();
-
-            try {
-                sendMessage(DEMO_OUTBOUND_TOPIC, UUID.randomUUID().toString(), outboxEvent.getId().toString(), inboundEvent);
-                outboxEventRepository.delete(outboxEvent);
-            } catch (Exception e) {
-                log.error("Error sending message to topic {}", DEMO_OUTBOUND_TOPIC, e);
-                throw new KafkaException(e.getMessage());
-            }
-        });
+        outboxEventRepository.findAfter(watermarkTransactionId, watermarkSequenceNumber, Long.MAX_VALUE, System.currentTimeMillis() - SETTLE_MS, Pageable.unpaged())
+                .forEach(outboxEvent -> {
+                    InboundEvent inboundEvent = InboundEvent.builder()
+                            .id(outboxEvent.getId().toString())
+                            .data(payloadService.load(outboxEvent.getPayload(), outboxEvent.getEncodedPayload()))
+                            .build();
+
+                    try {
+                        sendMessage(DEMO_OUTBOUND_TOPIC, UUID.randomUUID().toString(), outboxEvent.getId().toString(), inboundEvent);
+                        watermarkTransactionId = outboxEvent.getTransactionId();
+                        watermarkSequenceNumber = outboxEvent.getSequenceNumber();
+                    } catch (Exception e) {
+                        log.error("Error sending message to topic {}", DEMO_OUTBOUND_TOPIC, e);
+                        throw new KafkaException(e.getMessage());
+                    }
+                });
     }
 }
\ No newline at end of file
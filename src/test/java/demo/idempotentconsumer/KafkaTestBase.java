@@ -50,9 +50,16 @@ public abstract class KafkaTestBase {
      * Sends a message to the designated [topic] with the given [key] and [event].
      */
     public SendResult sendMessage(String topic, String eventId, String key, InboundEvent event) throws Exception {
+        return sendMessage(topic, eventId != null ? eventId.getBytes() : null, key, event);
+    }
+
+    /**
+     * Sends a message with the given raw [eventId] header, e.g. the 16 byte form of the Id.
+     */
+    public SendResult sendMessage(String topic, byte[] eventId, String key, InboundEvent event) throws Exception {
         String payload = JsonMapper.writeToJson(event);
         List<Header> headers = new ArrayList<>();
-        headers.add(new RecordHeader(KafkaClient.EVENT_ID_HEADER_KEY, eventId != null ? eventId.getBytes() : null));
+        headers.add(new RecordHeader(KafkaClient.EVENT_ID_HEADER_KEY, eventId));
         final ProducerRecord<Long, String> record = new ProducerRecord(topic, null, key, payload, headers);
 
         final SendResult result = (SendResult)kafkaTemplate.send(record).get();
@@ -0,0 +1,100 @@
+package demo.idempotentconsumer.configuration.faults;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+
+/**
+ * This test class demonstrates injecting faults into the dependencies at runtime.
+ *
+ *     Injected latency slows down the calls to a dependency. Injected errors are the exceptions the dependency would
+ *     throw, so a record failing on them is retried and processed once the dependency recovers.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class FaultInjectionTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private FaultInjector faultInjector;
+
+    @Autowired
+    private KafkaClient kafkaClient;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        faultInjector.clear();
+    }
+
+    @Test
+    public void testInjectedLatency() {
+        faultInjector.setProfile(Dependency.KAFKA, FaultProfile.builder().p50LatencyMs(500).p99LatencyMs(500).build());
+
+        long start = System.currentTimeMillis();
+        kafkaClient.sendMessage("someKey", "someData");
+
+        assertThat(System.currentTimeMillis() - start, greaterThanOrEqualTo(500L));
+    }
+
+    @Test
+    public void testInjectedDatabaseErrorsRetried() throws Exception {
+        faultInjector.setProfile(Dependency.DATABASE, FaultProfile.builder().errorRate(1).build());
+
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData"));
+
+        // The database recovers before the retries are exhausted
+        Thread.sleep(300);
+        faultInjector.clear();
+
+        Thread.sleep(10000);
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+        assertThat(testReceiver.counter.get(), equalTo(1));
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package demo.idempotentconsumer.configuration.mapper;
+
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test class demonstrates the round trip of events through the {@link InboundEventCodec}.
+ *
+ *     Events decode to what was encoded, whether their body was deflated or not, and bytes that aren't an encoded
+ *     event are rejected with a {@link MappingException}.
+ */
+class InboundEventCodecTest {
+
+    @Test
+    public void testSmallEventRoundTrip() {
+        assertRoundTrip(getInboundEvent("someData"));
+    }
+
+    @Test
+    public void testNullAndEmptyFieldsRoundTrip() {
+        assertRoundTrip(InboundEvent.builder().build());
+        assertRoundTrip(InboundEvent.builder().id("").data("").build());
+    }
+
+    @Test
+    public void testMultiByteCharactersRoundTrip() {
+        assertRoundTrip(getInboundEvent("Bestellung für Größe – 注文 🚀"));
+    }
+
+    @Test
+    public void testCompressibleEventDeflated() {
+        InboundEvent event = getInboundEvent("someData ".repeat(1000));
+
+        byte[] encoded = assertRoundTrip(event);
+        assertThat(encoded.length, lessThan(event.getData().length() / 10));
+    }
+
+    @Test
+    public void testIncompressibleEventRoundTrip() {
+        byte[] random = new byte[4096];
+        new Random(42).nextBytes(random);
+        StringBuilder data = new StringBuilder();
+        for (byte b : random) data.append((char) ('!' + (b & 0x3F)));
+
+        assertRoundTrip(getInboundEvent(data.toString()));
+    }
+
+    @Test
+    public void testMalformedRejected() {
+        byte[] encoded = InboundEventCodec.encode(getInboundEvent("someData ".repeat(1000)));
+        byte[] truncated = new byte[encoded.length / 2];
+        System.arraycopy(encoded, 0, truncated, 0, truncated.length);
+        byte[] wrongVersion = encoded.clone();
+        wrongVersion[1] = 2;
+
+        assertThrows(MappingException.class, () -> InboundEventCodec.decode(new byte[0]));
+        assertThrows(MappingException.class, () -> InboundEventCodec.decode("someData".getBytes()));
+        assertThrows(MappingException.class, () -> InboundEventCodec.decode(truncated));
+        assertThrows(MappingException.class, () -> InboundEventCodec.decode(wrongVersion));
+    }
+
+    private static byte[] assertRoundTrip(InboundEvent event) {
+        byte[] encoded = InboundEventCodec.encode(event);
+        InboundEvent decoded = InboundEventCodec.decode(encoded);
+
+        assertThat(decoded.getId(), equalTo(event.getId()));
+        assertThat(decoded.getData(), equalTo(event.getData()));
+        return encoded;
+    }
+
+    private static InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
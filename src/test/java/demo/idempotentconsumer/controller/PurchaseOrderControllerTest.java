@@ -0,0 +1,106 @@
+package demo.idempotentconsumer.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * This test class demonstrates the read API for purchase orders: lookups by id, keyset pagination on (timestamp, id)
+ * and streamed exports.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+@AutoConfigureMockMvc
+class PurchaseOrderControllerTest extends IntegrationTestBase {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @BeforeEach
+    public void setUp() {
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+    }
+
+    @Test
+    public void testFindById() throws Exception {
+        PurchaseOrder order = purchaseOrderRepository.save(getPurchaseOrder("someData", 1L));
+
+        mockMvc.perform(get("/orders/{id}", order.getId()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.payload").value("someData"));
+
+        mockMvc.perform(get("/orders/{id}", UUID.randomUUID()))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void testKeysetPagination() throws Exception {
+        // Two orders share a timestamp, so the id breaks the tie
+        purchaseOrderRepository.save(getPurchaseOrder("first", 1L));
+        purchaseOrderRepository.save(getPurchaseOrder("second", 2L));
+        purchaseOrderRepository.save(getPurchaseOrder("third", 2L));
+
+        JsonNode firstPage = getJson("/orders?limit=2");
+        assertThat(firstPage.get("orders").size(), equalTo(2));
+        assertThat(firstPage.get("orders").get(0).get("payload").asText(), equalTo("first"));
+
+        JsonNode secondPage = getJson("/orders?limit=2&cursor=" + firstPage.get("nextCursor").asText());
+        assertThat(secondPage.get("orders").size(), equalTo(1));
+        assertThat(secondPage.get("nextCursor").isNull(), equalTo(true));
+    }
+
+    @Test
+    public void testExport() throws Exception {
+        purchaseOrderRepository.save(getPurchaseOrder("first", 1L));
+        purchaseOrderRepository.save(getPurchaseOrder("second", 2L));
+
+        MvcResult result = mockMvc.perform(get("/orders/export"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body.lines().count(), equalTo(2L));
+    }
+
+    private JsonNode getJson(String url) throws Exception {
+        String body = mockMvc.perform(get(url))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(body);
+    }
+
+    PurchaseOrder getPurchaseOrder(String payload, long timestamp) {
+        return PurchaseOrder.builder()
+                .name(payload)
+                .timestamp(timestamp)
+                .build();
+    }
+}
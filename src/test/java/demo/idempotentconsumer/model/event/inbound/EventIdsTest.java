@@ -0,0 +1,85 @@
+package demo.idempotentconsumer.model.event.inbound;
+
+import demo.idempotentconsumer.exception.InvalidEventException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test class demonstrates how {@link EventIds} parses the binary and text forms of event Id headers.
+ *
+ *     Both forms of an Id parse to the same {@link UUID}, text in either case, and anything else is rejected as
+ *     malformed, except 16 bytes, which are always taken as a binary Id.
+ */
+class EventIdsTest {
+
+    private static final UUID EVENT_ID = UUID.fromString("0123abcd-4567-89ef-fedc-ba9876543210");
+
+    @Test
+    public void testBinaryAndTextParseToSameId() {
+        assertThat(EventIds.parse(EventIds.toBytes(EVENT_ID)), equalTo(EVENT_ID));
+        assertThat(EventIds.parse(EVENT_ID.toString().getBytes(StandardCharsets.US_ASCII)), equalTo(EVENT_ID));
+        assertThat(EventIds.parse(EVENT_ID.toString()), equalTo(EVENT_ID));
+    }
+
+    @Test
+    public void testUpperCaseText() {
+        String upperCase = EVENT_ID.toString().toUpperCase();
+
+        assertThat(EventIds.parse(upperCase), equalTo(EVENT_ID));
+        assertThat(EventIds.parse(upperCase.getBytes(StandardCharsets.US_ASCII)), equalTo(EVENT_ID));
+    }
+
+    @Test
+    public void testExtremeIds() {
+        UUID zero = new UUID(0, 0);
+        UUID max = new UUID(-1, -1);
+
+        assertThat(EventIds.parse(EventIds.toBytes(zero)), equalTo(zero));
+        assertThat(EventIds.parse(EventIds.toBytes(max)), equalTo(max));
+        assertThat(EventIds.parse(max.toString()), equalTo(max));
+        assertThat(EventIds.parse(max.toString().getBytes(StandardCharsets.US_ASCII)), equalTo(max));
+    }
+
+    @Test
+    public void testMalformedRejected() {
+        String[] malformed = {
+                "",
+                "not-an-event-id",
+                // Short of a digit
+                "0123abcd-4567-89ef-fedc-ba987654321",
+                // A digit too many
+                "0123abcd-4567-89ef-fedc-ba98765432100",
+                // Dashes misplaced
+                "0123abcd4-567-89ef-fedc-ba9876543210",
+                "0123abcd-4567-89ef-fedcb-a9876543210",
+                // Not hex
+                "0123abcd-4567-89ef-fedc-ba987654321g",
+                "g123abcd-4567-89ef-fedc-ba9876543210",
+                // Braces, as written by some clients
+                "{0123abcd-4567-89ef-fedc-ba98765432}",
+        };
+        for (String eventId : malformed) {
+            assertThrows(InvalidEventException.class, () -> EventIds.parse(eventId), eventId);
+            assertThrows(InvalidEventException.class, () -> EventIds.parse(eventId.getBytes(StandardCharsets.US_ASCII)), eventId);
+        }
+        assertThrows(InvalidEventException.class, () -> EventIds.parse((String) null));
+        assertThrows(InvalidEventException.class, () -> EventIds.parse((byte[]) null));
+        assertThrows(InvalidEventException.class, () -> EventIds.parse(new byte[EventIds.BINARY_LENGTH - 1]));
+        assertThrows(InvalidEventException.class, () -> EventIds.parse(new byte[EventIds.BINARY_LENGTH + 1]));
+    }
+
+    @Test
+    public void testSixteenCharactersTakenAsBinary() {
+        // Malformed as text, but indistinguishable from a binary Id
+        byte[] text = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+        assertThat(EventIds.parse(text), equalTo(new UUID(0x3031323334353637L, 0x3839616263646566L)));
+        assertThrows(InvalidEventException.class, () -> EventIds.parse("0123456789abcdef"));
+    }
+}
@@ -0,0 +1,65 @@
+package demo.idempotentconsumer.repository;
+
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.service.ClaimCheckService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test class demonstrates the claim-check round trip through the {@link FileBlobStore}.
+ *
+ *     Large payloads are stored once under their hash and resolved back from their reference. References that don't
+ *     hold a SHA-256 hash, e.g. ones pointing outside of the blob store, are rejected as invalid events.
+ */
+class FileBlobStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void testRoundTrip() {
+        FileBlobStore blobStore = new FileBlobStore(directory.resolve("blobs").toString());
+        ClaimCheckService claimCheckService = new ClaimCheckService(blobStore, 255);
+        String payload = "someData ".repeat(100);
+
+        String reference = claimCheckService.checkIn(payload);
+
+        assertThat(reference, startsWith(ClaimCheckService.REFERENCE_PREFIX));
+        assertThat(claimCheckService.checkIn(payload), equalTo(reference));
+        assertThat(claimCheckService.checkOut(reference), equalTo(payload));
+        assertThat(claimCheckService.checkIn("someData"), equalTo("someData"));
+        assertThat(claimCheckService.checkOut("someData"), equalTo("someData"));
+    }
+
+    @Test
+    public void testTraversalRejected() throws Exception {
+        FileBlobStore blobStore = new FileBlobStore(directory.resolve("blobs").toString());
+        ClaimCheckService claimCheckService = new ClaimCheckService(blobStore, 255);
+        Files.writeString(directory.resolve("secret"), "someSecret", StandardCharsets.UTF_8);
+
+        String[] hashes = {
+                "../secret",
+                "../../secret",
+                "/etc/passwd",
+                "",
+                // Upper case and short hashes are never written
+                "A".repeat(64),
+                "a".repeat(63),
+                "a".repeat(63) + "/",
+        };
+        for (String hash : hashes) {
+            assertThrows(InvalidEventException.class, () -> blobStore.get(hash), hash);
+            assertThrows(InvalidEventException.class, () -> claimCheckService.checkOut(ClaimCheckService.REFERENCE_PREFIX + hash), hash);
+        }
+        assertThrows(InvalidEventException.class, () -> blobStore.get(null));
+    }
+}
@@ -0,0 +1,151 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates how conflation reduces the work done for last-write-wins topics.
+ *
+ *     When several records for the same key arrive in the same poll batch, only the newest one writes an order and an
+ *     outbox event. The superseded records are still marked as processed, so redelivering them is a no-op. Marking
+ *     them skips events recorded concurrently, instead of failing the whole batch. An invalid newest record doesn't
+ *     supersede the valid records before it.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class ConflationTest extends IntegrationTestBase {
+
+    final static String DEMO_CONFLATED_TEST_TOPIC = "demo-conflated-idempotent-with-outbox-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private ProcessedEventStore processedEventStore;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testConflation() throws Exception {
+        MessageListenerContainer container = registry.getListenerContainer("conflatingConsumer");
+
+        // Stop the consumer so that all messages are delivered in the same poll batch
+        container.stop();
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData-1"));
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData-2"));
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData-3"));
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "otherKey", getInboundEvent("otherData"));
+        container.start();
+
+        Thread.sleep(10000);
+
+        List<String> orders = purchaseOrderRepository.findAll().stream().map(PurchaseOrder::getName).toList();
+        assertThat(orders, containsInAnyOrder("someData-3", "otherData"));
+        assertThat(processedEventRepository.count(), equalTo(4L));
+        assertThat(testReceiver.counter.get(), equalTo(2));
+    }
+
+    @Test
+    public void testInvalidNewestRecordKeepsLatestValid() throws Exception {
+        MessageListenerContainer container = registry.getListenerContainer("conflatingConsumer");
+
+        // Stop the consumer so that all messages are delivered in the same poll batch
+        container.stop();
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData-1"));
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData-2"));
+        sendMessage(DEMO_CONFLATED_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent(null));
+        container.start();
+
+        await().atMost(15, TimeUnit.SECONDS).until(() -> processedEventRepository.count() == 2L);
+
+        List<String> orders = purchaseOrderRepository.findAll().stream().map(PurchaseOrder::getName).toList();
+        assertThat(orders, containsInAnyOrder("someData-2"));
+    }
+
+    @Test
+    public void testMarkProcessedSkipsConcurrentlyRecorded() throws Exception {
+        UUID processedConcurrently = UUID.randomUUID();
+        UUID superseded = UUID.randomUUID();
+        TopicPartition source = new TopicPartition(DEMO_CONFLATED_TEST_TOPIC, 0);
+        CountDownLatch recorded = new CountDownLatch(1);
+        CountDownLatch marking = new CountDownLatch(1);
+
+        // Another transaction records one of the events, and commits while the batch is being marked
+        Thread concurrent = new Thread(() -> new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            processedEventStore.add(processedConcurrently, source);
+            recorded.countDown();
+            try {
+                marking.await(10, TimeUnit.SECONDS);
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        concurrent.start();
+        recorded.await(10, TimeUnit.SECONDS);
+        marking.countDown();
+        orderService.markProcessed(Map.of(processedConcurrently, source, superseded, source));
+        concurrent.join();
+
+        assertThat(processedEventRepository.count(), equalTo(2L));
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,128 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.MappingException;
+import demo.idempotentconsumer.exception.InvalidEventException;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates which failed records skip the retry topics.
+ *
+ *     Records that can never be processed, because their payload can't be read or their event is invalid, are
+ *     published to the dead-letter topic right away, without going through any retry topic.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class DeadLetterTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testInvalidEventsSkipRetries() throws Exception {
+        // Unreadable payload
+        ProducerRecord<String, String> unreadable = new ProducerRecord<>(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, "unreadable", "{not json");
+        unreadable.headers().add(KafkaClient.EVENT_ID_HEADER_KEY, UUID.randomUUID().toString().getBytes(StandardCharsets.US_ASCII));
+        kafkaTemplate.send(unreadable).get();
+        // Malformed event Id
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, "not-an-event-id", "malformedId", getInboundEvent("someData"));
+        // No data
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, UUID.randomUUID().toString(), "noData", getInboundEvent(null));
+
+        List<ConsumerRecord<String, String>> failed = consumeRetryAndDeadLetterTopics(Duration.ofSeconds(10));
+
+        assertThat(failed.stream().map(ConsumerRecord::topic).distinct().toList(), equalTo(List.of(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC + "-dlt")));
+        assertThat(failed.stream().map(ConsumerRecord::key).toList(), containsInAnyOrder("unreadable", "malformedId", "noData"));
+        for (ConsumerRecord<String, String> record : failed) {
+            assertThat(header(record, KafkaHeaders.ORIGINAL_TOPIC), equalTo(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC));
+            String cause = header(record, KafkaHeaders.EXCEPTION_CAUSE_FQCN);
+            assertThat(cause.equals(MappingException.class.getName()) || cause.equals(InvalidEventException.class.getName()), equalTo(true));
+        }
+        assertThat(purchaseOrderRepository.count(), equalTo(0L));
+        assertThat(outboxEventRepository.count(), equalTo(0L));
+    }
+
+    private List<ConsumerRecord<String, String>> consumeRetryAndDeadLetterTopics(Duration duration) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                KafkaTestUtils.consumerProps("DeadLetterTest", "false", embeddedKafkaBroker),
+                new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            consumer.subscribe(Pattern.compile(Pattern.quote(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC) + "-(retry-\\d+|dlt)"));
+            long deadline = System.currentTimeMillis() + duration.toMillis();
+            while (System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(500)).forEach(records::add);
+            }
+        }
+        return records;
+    }
+
+    private static String header(ConsumerRecord<String, String> record, String key) {
+        Header header = record.headers().lastHeader(key);
+        return header != null ? new String(header.value(), StandardCharsets.UTF_8) : null;
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -2,6 +2,7 @@ package demo.idempotentconsumer.service;
 
 import demo.idempotentconsumer.IntegrationTestBase;
 import demo.idempotentconsumer.model.domain.PurchaseOrder;
+import demo.idempotentconsumer.model.event.inbound.EventIds;
 import demo.idempotentconsumer.model.event.inbound.InboundEvent;
 import demo.idempotentconsumer.repository.PurchaseOrderRepository;
 import demo.idempotentconsumer.repository.OutboxEventRepository;
@@ -15,7 +16,9 @@ import org.springframework.kafka.test.context.EmbeddedKafka;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
+import static org.awaitility.Awaitility.await;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 
@@ -80,6 +83,25 @@ class DeduplicationTest extends IntegrationTestBase {
         testDeduplication(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC);
     }
 
+    @Test
+    public void testIdempotentBinaryEventId() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        String key = "someKey";
+        InboundEvent inboundEvent = getInboundEvent(key);
+
+        // The binary and the textual header of the same Id are the same event
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, EventIds.toBytes(eventId), key, inboundEvent);
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), key, inboundEvent);
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, EventIds.toBytes(eventId), key, inboundEvent);
+        // The partition is processed in order, so the duplicates have been rejected once the next event is processed
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, UUID.randomUUID().toString(), key, InboundEvent.builder().id(key).data("nextData").build());
+        await().atMost(15, TimeUnit.SECONDS).until(() -> purchaseOrderRepository.findAll().stream().anyMatch(order -> "nextData".equals(order.getName())));
+        await().atMost(15, TimeUnit.SECONDS).until(() -> testReceiver.counter.get() == 2);
+
+        assertThat(purchaseOrderRepository.count(), equalTo(2L));
+        assertThat(testReceiver.counter.get(), equalTo(2));
+    }
+
     @Test
     public void testParallelNonIdempotent() throws Exception {
         String key = "someKey";
@@ -0,0 +1,131 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.faults.FaultInjector;
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import demo.idempotentconsumer.configuration.faults.FaultProfile;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates the warm-up of recently processed event Ids when partitions are assigned.
+ *
+ *     Events are recorded under the inbound partition, even when they were processed from a retry topic. When the
+ *     partition is revoked its Ids are dropped from the {@link RecentEventIdCache}, and when it is assigned again they
+ *     are loaded back from the database, so redeliveries are rejected without a database round trip.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class DeduplicationWarmUpTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private FaultInjector faultInjector;
+
+    @Autowired
+    private RecentEventIdCache recentEventIdCache;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        faultInjector.clear();
+    }
+
+    @Test
+    public void testRetriedEventRecordedUnderInboundPartition() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        faultInjector.setProfile(Dependency.DATABASE, FaultProfile.builder().errorRate(1).build());
+
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+
+        // The database recovers once the record has moved to a retry topic
+        Thread.sleep(300);
+        faultInjector.clear();
+
+        await().atMost(15, TimeUnit.SECONDS).until(() -> processedEventRepository.existsById(eventId));
+        ProcessedInboundEvent processedEvent = processedEventRepository.findById(eventId).orElseThrow();
+        assertThat(processedEvent.getTopic(), equalTo(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC));
+        assertThat(processedEvent.getSourcePartition(), equalTo(0));
+        assertThat(recentEventIdCache.contains(new TopicPartition(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, 0), eventId), equalTo(true));
+    }
+
+    @Test
+    public void testWarmedUpOnAssignment() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        TopicPartition partition = new TopicPartition(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, 0);
+        MessageListenerContainer container = registry.getListenerContainers().stream()
+                .filter(candidate -> Arrays.asList(candidate.getContainerProperties().getTopics()).contains(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC))
+                .findFirst()
+                .orElseThrow();
+
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+        await().atMost(10, TimeUnit.SECONDS).until(() -> recentEventIdCache.contains(partition, eventId));
+
+        // Revoking the partition drops its Ids
+        container.stop();
+        assertThat(recentEventIdCache.contains(partition, eventId), equalTo(false));
+
+        // Assigning it again loads them from the database
+        container.start();
+        super.setUp();
+        await().atMost(10, TimeUnit.SECONDS).until(() -> recentEventIdCache.contains(partition, eventId));
+
+        // A redelivery is rejected
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+        Thread.sleep(5000);
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
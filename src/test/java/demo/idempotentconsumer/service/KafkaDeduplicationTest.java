@@ -0,0 +1,169 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.listener.MessageListenerContainer;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+import org.springframework.test.context.TestPropertySource;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates deduplication against processed event Ids kept in a compacted Kafka topic instead of
+ * the database.
+ *
+ *     Duplicates are rejected by the in-memory state of the assigned partitions, and the processed_inbound_event table
+ *     stays empty. When partitions are assigned, their state is materialized from the state topic, and Ids recorded by
+ *     other instances are caught up while they are assigned.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+@TestPropertySource(properties = "deduplication.backend=kafka")
+class KafkaDeduplicationTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+    final static String DEMO_IDEMPOTENT_OUTBOX_STATE_TOPIC = "demo-idempotent-with-outbox-inbound-topic-processed-ids";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private AsyncOrderService asyncOrderService;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testDuplicatesRejected() throws Exception {
+        UUID eventId = UUID.randomUUID();
+
+        // Send the message multiple times
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+
+        Thread.sleep(10000);
+
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+        assertThat(testReceiver.counter.get(), equalTo(1));
+        assertThat(processedEventRepository.count(), equalTo(0L));
+    }
+
+    @Test
+    public void testStateMaterializedOnAssignment() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        MessageListenerContainer container = registry.getListenerContainers().stream()
+                .filter(candidate -> Arrays.asList(candidate.getContainerProperties().getTopics()).contains(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC))
+                .findFirst()
+                .orElseThrow();
+
+        // Record the event as processed, e.g. by another instance, while the partition isn't assigned
+        container.stop();
+        recordProcessed(eventId);
+        container.start();
+        super.setUp();
+
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+
+        Thread.sleep(10000);
+
+        assertThat(purchaseOrderRepository.count(), equalTo(0L));
+        assertThat(testReceiver.counter.get(), equalTo(0));
+    }
+
+    @Test
+    public void testStateCaughtUpWhileAssigned() throws Exception {
+        UUID eventId = UUID.randomUUID();
+
+        // Processing a first event creates the state topic
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("someData"));
+        await().atMost(10, TimeUnit.SECONDS).until(() -> purchaseOrderRepository.count() == 1L);
+
+        // Record the event as processed, e.g. by a retry topic listener of another instance, while the partition is assigned
+        recordProcessed(eventId);
+
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, eventId.toString(), "someKey", getInboundEvent("someData"));
+        // The partition is processed in order, so the duplicate has been rejected once the next event is processed
+        sendMessage(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, UUID.randomUUID().toString(), "someKey", getInboundEvent("nextData"));
+        await().atMost(10, TimeUnit.SECONDS).until(() -> purchaseOrderRepository.findAll().stream().anyMatch(order -> "nextData".equals(order.getName())));
+
+        assertThat(purchaseOrderRepository.count(), equalTo(2L));
+    }
+
+    @Test
+    public void testEventsWithoutSourceRecordedInDatabase() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        InboundEvent inboundEvent = getInboundEvent("someData");
+
+        // Events not consumed from Kafka have no state partition
+        for (int i = 0; i < 3; i++) {
+            asyncOrderService.processIdempotentAsync(eventId.toString(), "someKey", inboundEvent, false);
+        }
+        asyncOrderService.drain();
+
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+        assertThat(processedEventRepository.count(), equalTo(1L));
+    }
+
+    private void recordProcessed(UUID eventId) throws Exception {
+        try (Producer<byte[], byte[]> producer = new DefaultKafkaProducerFactory<>(
+                KafkaTestUtils.producerProps(embeddedKafkaBroker), new ByteArraySerializer(), new ByteArraySerializer()).createProducer()) {
+            byte[] key = ByteBuffer.allocate(16)
+                    .putLong(eventId.getMostSignificantBits())
+                    .putLong(eventId.getLeastSignificantBits())
+                    .array();
+            producer.send(new ProducerRecord<>(DEMO_IDEMPOTENT_OUTBOX_STATE_TOPIC, 0, key, new byte[Long.BYTES])).get();
+        }
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
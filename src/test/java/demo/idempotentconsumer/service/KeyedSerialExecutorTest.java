@@ -0,0 +1,179 @@
+package demo.idempotentconsumer.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test class demonstrates the guarantees of the {@link KeyedSerialExecutor}.
+ *
+ *     Tasks with the same key run one after another in submission order, tasks on different stripes run in parallel, a
+ *     busy stripe hands its thread back, and a shut down executor rejects new tasks while draining the pending ones.
+ */
+class KeyedSerialExecutorTest {
+
+    private KeyedSerialExecutor executor;
+
+    @AfterEach
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdown();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testOrderPerKeyUnderConcurrentSubmits() throws Exception {
+        // Fewer stripes than keys, so that keys share stripes too
+        executor = new KeyedSerialExecutor("test", 8, 4);
+        int keys = 16;
+        int tasksPerKey = 1000;
+        Map<Integer, List<Integer>> executed = new ConcurrentHashMap<>();
+        Map<Integer, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountDownLatch done = new CountDownLatch(keys * tasksPerKey);
+
+        // One submitting thread per key, all submitting at once
+        List<Thread> submitters = new ArrayList<>();
+        for (int key = 0; key < keys; key++) {
+            int k = key;
+            executed.put(k, Collections.synchronizedList(new ArrayList<>()));
+            running.put(k, new AtomicInteger());
+            submitters.add(new Thread(() -> {
+                for (int i = 0; i < tasksPerKey; i++) {
+                    int seq = i;
+                    executor.execute(k, () -> {
+                        if (running.get(k).incrementAndGet() > 1) overlapped.set(true);
+                        executed.get(k).add(seq);
+                        running.get(k).decrementAndGet();
+                        done.countDown();
+                    });
+                }
+            }));
+        }
+        submitters.forEach(Thread::start);
+        for (Thread submitter : submitters) submitter.join();
+
+        assertThat(done.await(30, TimeUnit.SECONDS), equalTo(true));
+        assertThat(overlapped.get(), equalTo(false));
+        for (int key = 0; key < keys; key++) {
+            List<Integer> sequence = executed.get(key);
+            for (int i = 0; i < tasksPerKey; i++) {
+                assertThat(sequence.get(i), equalTo(i));
+            }
+        }
+    }
+
+    @Test
+    public void testParallelAcrossStripes() throws Exception {
+        executor = new KeyedSerialExecutor("test", 2, 16);
+        CountDownLatch bothRunning = new CountDownLatch(2);
+        CountDownLatch done = new CountDownLatch(2);
+
+        // Keys 0 and 1 land on different stripes; each task only completes if the other one runs at the same time
+        for (int key = 0; key < 2; key++) {
+            executor.execute(key, () -> {
+                bothRunning.countDown();
+                try {
+                    if (bothRunning.await(10, TimeUnit.SECONDS)) done.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        assertThat(done.await(15, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    public void testBusyStripeHandsThreadBack() throws Exception {
+        executor = new KeyedSerialExecutor("test", 1, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> executed = Collections.synchronizedList(new ArrayList<>());
+        int busyTasks = KeyedSerialExecutor.MAX_TASKS_PER_DRAIN + 10;
+        CountDownLatch done = new CountDownLatch(busyTasks + 1);
+
+        // The only thread is held by the first task of key 0 until both stripes are queued
+        executor.execute(0, () -> await(release));
+        for (int i = 1; i < busyTasks; i++) {
+            executor.execute(0, () -> {
+                executed.add("busy");
+                done.countDown();
+            });
+        }
+        executor.execute(1, () -> {
+            executed.add("other");
+            done.countDown();
+        });
+        done.countDown();
+        release.countDown();
+
+        assertThat(done.await(10, TimeUnit.SECONDS), equalTo(true));
+        // Key 0 ran a full drain, the blocking task included, before key 1 got the thread
+        assertThat(executed.indexOf("other"), equalTo(KeyedSerialExecutor.MAX_TASKS_PER_DRAIN - 1));
+    }
+
+    @Test
+    public void testRejectsAfterShutdown() {
+        executor = new KeyedSerialExecutor("test", 1, 16);
+        executor.shutdown();
+
+        assertThrows(RejectedExecutionException.class, () -> executor.execute("someKey", () -> { }));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(null, () -> { }));
+    }
+
+    @Test
+    public void testDrainsPendingTasksAfterShutdown() throws Exception {
+        executor = new KeyedSerialExecutor("test", 1, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+        // More than one drain of tasks, so that the stripe reschedules itself after the shutdown
+        int tasks = KeyedSerialExecutor.MAX_TASKS_PER_DRAIN * 3;
+
+        executor.execute(0, () -> await(release));
+        for (int i = 0; i < tasks; i++) executor.execute(0, executed::incrementAndGet);
+        executor.shutdown();
+        release.countDown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(executed.get(), equalTo(tasks));
+    }
+
+    @Test
+    public void testAwaitsSubmittedTasks() throws Exception {
+        executor = new KeyedSerialExecutor("test", 2, 16);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executed = new AtomicInteger();
+
+        executor.execute(0, () -> await(release));
+        executor.execute(0, executed::incrementAndGet);
+        executor.execute(null, executed::incrementAndGet);
+
+        assertThat(executor.awaitSubmitted(100, TimeUnit.MILLISECONDS), equalTo(false));
+        release.countDown();
+        assertThat(executor.awaitSubmitted(10, TimeUnit.SECONDS), equalTo(true));
+        assertThat(executed.get(), equalTo(2));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.model.domain.OrderSummary;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OrderSummaryRepository;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates the in-memory order aggregates.
+ *
+ *     Orders are counted per key once committed, duplicates aren't counted, and the counts survive a rebuild from the
+ *     orders table. Flushed windows past the retention, and the oldest ones past the window limit, are dropped from
+ *     memory.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class OrderAggregatesTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_TEST_TOPIC = "demo-idempotent-inbound-topic";
+
+    @Autowired
+    private OrderAggregates orderAggregates;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OrderSummaryRepository orderSummaryRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testCountsPerKey() throws Exception {
+        // Keys of their own, as other tests of the same context count orders too
+        String key = UUID.randomUUID().toString();
+        String otherKey = UUID.randomUUID().toString();
+        UUID eventId = UUID.randomUUID();
+
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), key, getInboundEvent("someData"));
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), key, getInboundEvent("someData"));
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, UUID.randomUUID().toString(), key, getInboundEvent("someData"));
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, UUID.randomUUID().toString(), otherKey, getInboundEvent("someData"));
+
+        // Events are processed one after another with a delay
+        await().atMost(60, TimeUnit.SECONDS).untilAsserted(() -> {
+            assertThat(countOrders(key), equalTo(2L));
+            assertThat(countOrders(otherKey), equalTo(1L));
+        });
+
+        orderAggregates.flush();
+        orderAggregates.rebuild();
+
+        assertThat(countOrders(key), equalTo(2L));
+        assertThat(countOrders(otherKey), equalTo(1L));
+    }
+
+    @Test
+    public void testFlushedWindowsEvicted() {
+        long windowMs = orderAggregates.getWindowMs();
+        OrderAggregates aggregates = new OrderAggregates(orderSummaryRepository, windowMs, Duration.ofMillis(10 * windowMs), 2);
+        String key = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+
+        aggregates.record(key, now - 20 * windowMs);
+        aggregates.record(key, now - 3 * windowMs);
+        aggregates.record(key, now - 2 * windowMs);
+        aggregates.record(key, now - windowMs);
+        assertThat(aggregates.find(0, Long.MAX_VALUE, key).size(), equalTo(4));
+
+        aggregates.flush();
+
+        List<OrderSummary> retained = aggregates.find(0, Long.MAX_VALUE, key);
+        assertThat(retained.size(), equalTo(2));
+        assertThat(retained.get(0).getWindowStart(), equalTo(windowStart(now - 2 * windowMs, windowMs)));
+    }
+
+    private static long windowStart(long timestamp, long windowMs) {
+        return timestamp - Math.floorMod(timestamp, windowMs);
+    }
+
+    private long countOrders(String key) {
+        return orderAggregates.find(0, Long.MAX_VALUE, key).stream().mapToLong(OrderSummary::getOrderCount).sum();
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,117 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.model.event.outbound.OutboxEvent;
+import demo.idempotentconsumer.repository.AppendOnlyRepository;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.OutboxRelayWatermarkRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates that the {@link OutboxRelay} keeps the order of events with the same key.
+ *
+ *     Events written within the same millisecond have random Ids, so only their sequence number tells their order.
+ *     Events are relayed in small batches over parallel lanes, and those with the same key arrive in the order they
+ *     were written.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+class OutboxRelayTest extends IntegrationTestBase {
+
+    final static String DEMO_OUTBOX_RELAY_TEST_TOPIC = "demo-outbox-relay-test-topic";
+
+    @Autowired
+    private AppendOnlyRepository appendOnlyRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private OutboxRelayWatermarkRepository watermarkRepository;
+
+    @Autowired
+    private KafkaClient kafkaClient;
+
+    @Autowired
+    private PayloadService payloadService;
+
+    @Autowired
+    private EmbeddedKafkaBroker embeddedKafkaBroker;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+
+        // Cleaning database
+        outboxEventRepository.deleteAll();
+        watermarkRepository.deleteAll();
+    }
+
+    @Test
+    public void testSameKeyEventsRelayedInOrder() throws Exception {
+        long timestamp = System.currentTimeMillis() - 1000;
+        List<String> written = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            String key = i % 4 == 3 ? "otherKey" : "someKey";
+            String payload = key + "-" + i;
+            appendOnlyRepository.insertOutboxEvent(OutboxEvent.builder()
+                    .payload(payload)
+                    .timestamp(timestamp)
+                    .destination(DEMO_OUTBOX_RELAY_TEST_TOPIC)
+                    .version("v1")
+                    .aggregateKey(key)
+                    .build());
+            written.add(payload);
+        }
+
+        OutboxRelay outboxRelay = new OutboxRelay(outboxEventRepository, watermarkRepository, kafkaClient, payloadService, true, 3, false, 0, 4);
+        try {
+            for (int i = 0; i < written.size(); i++) outboxRelay.relay();
+        } finally {
+            outboxRelay.shutdown();
+        }
+
+        List<ConsumerRecord<String, String>> relayed = consume(DEMO_OUTBOX_RELAY_TEST_TOPIC, written.size());
+        assertThat(valuesByKey(relayed), equalTo(written.stream().collect(Collectors.groupingBy(payload -> payload.split("-")[0]))));
+        long lastSequenceNumber = outboxEventRepository.findAll().stream().mapToLong(OutboxEvent::getSequenceNumber).max().orElseThrow();
+        assertThat(watermarkRepository.findById(OutboxRelay.RELAY).orElseThrow().getSequenceNumber(), equalTo(lastSequenceNumber));
+    }
+
+    private List<ConsumerRecord<String, String>> consume(String topic, int count) {
+        List<ConsumerRecord<String, String>> records = new ArrayList<>();
+        try (Consumer<String, String> consumer = new DefaultKafkaConsumerFactory<>(
+                KafkaTestUtils.consumerProps("OutboxRelayTest", "false", embeddedKafkaBroker),
+                new StringDeserializer(), new StringDeserializer()).createConsumer()) {
+            consumer.subscribe(List.of(topic));
+            long deadline = System.currentTimeMillis() + 10000;
+            while (records.size() < count && System.currentTimeMillis() < deadline) {
+                consumer.poll(Duration.ofMillis(500)).forEach(records::add);
+            }
+        }
+        return records;
+    }
+
+    private static Map<String, List<String>> valuesByKey(List<ConsumerRecord<String, String>> records) {
+        return records.stream().collect(Collectors.groupingBy(ConsumerRecord::key, Collectors.mapping(ConsumerRecord::value, Collectors.toList())));
+    }
+}
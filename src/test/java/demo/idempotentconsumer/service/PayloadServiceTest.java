@@ -0,0 +1,73 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.BlobStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates when the {@link PayloadService} claim-checks payloads.
+ *
+ *     Text payloads are claim-checked by their length, binary ones by their encoded and compressed size, so a large
+ *     payload that compresses well stays inline in the binary encoding. Either way the original payload is loaded back.
+ */
+class PayloadServiceTest {
+
+    private static final int THRESHOLD = 255;
+
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private final ClaimCheckService claimCheckService = new ClaimCheckService(new BlobStore() {
+        @Override
+        public String put(byte[] content) {
+            String hash = String.format("%064x", blobs.size());
+            blobs.put(hash, content);
+            return hash;
+        }
+
+        @Override
+        public byte[] get(String hash) {
+            return blobs.get(hash);
+        }
+    }, THRESHOLD);
+
+    @Test
+    public void testCompressiblePayloadInlineWhenBinary() {
+        String data = "someData ".repeat(100);
+        PayloadService.StoredPayload text = new PayloadService(claimCheckService, PayloadService.Encoding.TEXT).store(getInboundEvent(data));
+        PayloadService.StoredPayload binary = new PayloadService(claimCheckService, PayloadService.Encoding.BINARY).store(getInboundEvent(data));
+
+        assertThat(ClaimCheckService.isReference(text.getText()), equalTo(true));
+        assertThat(ClaimCheckService.isReference(binary.getText()), equalTo(false));
+        assertThat(binary.getText(), equalTo(data));
+        assertThat(blobs.size(), equalTo(1));
+    }
+
+    @Test
+    public void testIncompressiblePayloadClaimCheckedWhenBinary() {
+        byte[] random = new byte[THRESHOLD * 2];
+        new Random(42).nextBytes(random);
+        StringBuilder data = new StringBuilder();
+        for (byte b : random) data.append((char) ('!' + (b & 0x3F)));
+        PayloadService payloadService = new PayloadService(claimCheckService, PayloadService.Encoding.BINARY);
+
+        PayloadService.StoredPayload binary = payloadService.store(getInboundEvent(data.toString()));
+
+        assertThat(ClaimCheckService.isReference(binary.getText()), equalTo(true));
+        assertThat(payloadService.toMessage(null, binary.getBinary()), equalTo(binary.getText()));
+        assertThat(payloadService.load(null, binary.getBinary()), equalTo(data.toString()));
+    }
+
+    private static InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,93 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.deduplication.DeduplicationConfiguration.Backend;
+import demo.idempotentconsumer.consumer.ReactiveKafkaConsumer;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * This test class demonstrates the reactive pipeline, consuming with the idempotent consumer with outbox over R2DBC.
+ *
+ *     Redelivered events are rejected as by the listener containers, and the order is published once. Processed
+ *     events are recorded in the database, so the pipeline can't be combined with the Kafka deduplication backend.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+@TestPropertySource(properties = "reactive.enabled=true")
+class ReactivePipelineTest extends IntegrationTestBase {
+
+    final static String DEMO_REACTIVE_TEST_TOPIC = "demo-reactive-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RecentEventIdCache recentEventIdCache;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testIdempotentOutbox() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        InboundEvent inboundEvent = getInboundEvent("someData");
+
+        // Send the message multiple times
+        sendMessage(DEMO_REACTIVE_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+        sendMessage(DEMO_REACTIVE_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+        sendMessage(DEMO_REACTIVE_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+
+        Thread.sleep(10000);
+
+        assertThat(testReceiver.counter.get(), equalTo(1));
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+        assertThat(processedEventRepository.count(), equalTo(1L));
+        assertThat(recentEventIdCache.contains(new TopicPartition(DEMO_REACTIVE_TEST_TOPIC, 0), eventId), equalTo(true));
+    }
+
+    @Test
+    public void testKafkaBackendRejected() {
+        assertThrows(IllegalStateException.class, () -> new ReactiveKafkaConsumer(
+                null, null, null, null, true, Backend.KAFKA, true, 4, 1000, 30000, 30000));
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,145 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.BlobStore;
+import demo.idempotentconsumer.repository.ReplayRepository;
+import demo.idempotentconsumer.repository.ReplayRepository.StagedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates how the {@link ReplayService} deduplicates a chunk before writing it.
+ *
+ *     Invalid records are skipped, and of the records with the same event Id only the first one is staged. Events that
+ *     were processed already are dropped before their payloads are stored, so they don't write claim-check blobs. The
+ *     remaining events are staged in the order they were consumed.
+ */
+class ReplayServiceTest {
+
+    private static final String DEMO_REPLAY_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+    private static final int THRESHOLD = 255;
+
+    private final Map<String, byte[]> blobs = new HashMap<>();
+    private final ClaimCheckService claimCheckService = new ClaimCheckService(new BlobStore() {
+        @Override
+        public String put(byte[] content) {
+            String hash = String.format("%064x", blobs.size());
+            blobs.put(hash, content);
+            return hash;
+        }
+
+        @Override
+        public byte[] get(String hash) {
+            return blobs.get(hash);
+        }
+    }, THRESHOLD);
+
+    private final StubReplayRepository replayRepository = new StubReplayRepository();
+    private final ReplayService replayService = new ReplayService(replayRepository,
+            new PayloadService(claimCheckService, PayloadService.Encoding.TEXT),
+            new OrderAggregates(null, 60000, Duration.ofHours(1), 1000));
+
+    private long offset;
+
+    @Test
+    public void testDuplicatesDroppedBeforePayloadsStored() {
+        UUID processedEventId = UUID.randomUUID();
+        UUID firstEventId = UUID.randomUUID();
+        UUID secondEventId = UUID.randomUUID();
+        replayRepository.processedEventIds.add(processedEventId);
+        String largeData = "x".repeat(THRESHOLD + 1);
+
+        replayService.replay(List.of(
+                record(processedEventId, "someKey", largeData),
+                record(secondEventId, "otherKey", largeData),
+                record(firstEventId, "someKey", "firstData"),
+                record(secondEventId, "otherKey", "secondDataAgain")));
+
+        assertThat(replayRepository.lookedUpEventIds, equalTo(Set.of(processedEventId, firstEventId, secondEventId)));
+        assertThat(eventIds(replayRepository.insertedEvents), equalTo(List.of(secondEventId, firstEventId)));
+        assertThat(replayRepository.insertedEvents.get(1).getPayload(), equalTo("firstData"));
+        // Only the first record of the second event is claim-checked, not the processed event nor the later duplicate
+        assertThat(blobs.size(), equalTo(1));
+    }
+
+    @Test
+    public void testInvalidRecordsSkipped() {
+        UUID eventId = UUID.randomUUID();
+
+        replayService.replay(List.of(
+                new ConsumerRecord<>(DEMO_REPLAY_TEST_TOPIC, 0, offset++, "someKey", JsonMapper.writeToJson(InboundEvent.builder().id("someId").data("someData").build())),
+                rawRecord(UUID.randomUUID(), "someKey", JsonMapper.writeToJson(InboundEvent.builder().id("someId").build())),
+                record(eventId, "someKey", "someData"),
+                rawRecord(UUID.randomUUID(), "someKey", "not json")));
+
+        assertThat(eventIds(replayRepository.insertedEvents), equalTo(List.of(eventId)));
+    }
+
+    @Test
+    public void testChunkOfDuplicatesNotInserted() {
+        UUID eventId = UUID.randomUUID();
+        replayRepository.processedEventIds.add(eventId);
+
+        replayService.replay(List.of(record(eventId, "someKey", "someData"), record(eventId, "someKey", "someData")));
+
+        assertThat(replayRepository.inserts, equalTo(0));
+        assertThat(blobs.size(), equalTo(0));
+    }
+
+    private ConsumerRecord<String, String> record(UUID eventId, String key, String data) {
+        return rawRecord(eventId, key, JsonMapper.writeToJson(InboundEvent.builder().id(UUID.randomUUID().toString()).data(data).build()));
+    }
+
+    private ConsumerRecord<String, String> rawRecord(UUID eventId, String key, String value) {
+        ConsumerRecord<String, String> record = new ConsumerRecord<>(DEMO_REPLAY_TEST_TOPIC, 0, offset++, key, value);
+        record.headers().add(KafkaClient.EVENT_ID_HEADER_KEY, eventId.toString().getBytes(StandardCharsets.US_ASCII));
+        return record;
+    }
+
+    private static List<UUID> eventIds(List<StagedEvent> events) {
+        return events.stream().map(StagedEvent::getEventId).collect(Collectors.toList());
+    }
+
+    private static class StubReplayRepository extends ReplayRepository {
+
+        final Set<UUID> processedEventIds = new HashSet<>();
+        final Set<UUID> lookedUpEventIds = new HashSet<>();
+        final List<StagedEvent> insertedEvents = new ArrayList<>();
+        int inserts;
+
+        StubReplayRepository() {
+            super(new DriverManagerDataSource());
+        }
+
+        @Override
+        public Set<UUID> findProcessedEventIds(Collection<UUID> eventIds) {
+            lookedUpEventIds.addAll(eventIds);
+            return eventIds.stream().filter(processedEventIds::contains).collect(Collectors.toSet());
+        }
+
+        @Override
+        public List<String> insertNewEvents(List<StagedEvent> events, String outboxDestination, long timestamp) {
+            inserts++;
+            insertedEvents.addAll(events);
+            return events.stream().map(StagedEvent::getKey).collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.configuration.faults.FaultInjector;
+import demo.idempotentconsumer.configuration.faults.FaultInjector.Dependency;
+import demo.idempotentconsumer.configuration.faults.FaultProfile;
+import demo.idempotentconsumer.configuration.kafka.KafkaClient;
+import demo.idempotentconsumer.configuration.mapper.JsonMapper;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.model.event.outbound.ProcessedInboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.config.KafkaListenerEndpointRegistry;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.ContainerTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+/**
+ * This test class demonstrates that retried events are recorded under the partition they were originally consumed from.
+ *
+ *     The inbound topic has more partitions than its retry topics, so a record retried from a partition other than
+ *     the first lands on a retry topic partition with a different number. It is still recorded under its original
+ *     topic and partition, which the retry topics carry as headers.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 3, topics = RetriedEventSourceTest.DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, controlledShutdown = true)
+class RetriedEventSourceTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC = "demo-idempotent-with-outbox-inbound-topic";
+
+    @Autowired
+    private FaultInjector faultInjector;
+
+    @Autowired
+    private RecentEventIdCache recentEventIdCache;
+
+    @Autowired
+    private KafkaListenerEndpointRegistry registry;
+
+    @Autowired
+    private KafkaTemplate<String, String> kafkaTemplate;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @BeforeEach
+    public void setUp() {
+        // Only the inbound topic is created with three partitions, the retry topics have one
+        registry.getListenerContainers().forEach(container -> {
+            List<String> topics = Arrays.asList(container.getContainerProperties().getTopics());
+            if (topics.contains(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC)) {
+                ContainerTestUtils.waitForAssignment(container, 3);
+            } else if (topics.stream().anyMatch(topic -> topic.startsWith(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC + "-"))) {
+                ContainerTestUtils.waitForAssignment(container, 1);
+            }
+        });
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        faultInjector.clear();
+    }
+
+    @Test
+    public void testRetriedEventRecordedUnderOriginalPartition() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        faultInjector.setProfile(Dependency.DATABASE, FaultProfile.builder().errorRate(1).build());
+
+        ProducerRecord<String, String> record = new ProducerRecord<>(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, 2, "someKey",
+                JsonMapper.writeToJson(InboundEvent.builder().id(UUID.randomUUID().toString()).data("someData").build()));
+        record.headers().add(KafkaClient.EVENT_ID_HEADER_KEY, eventId.toString().getBytes(StandardCharsets.US_ASCII));
+        kafkaTemplate.send(record).get();
+
+        // The database recovers once the record has moved to a retry topic
+        Thread.sleep(300);
+        faultInjector.clear();
+
+        await().atMost(15, TimeUnit.SECONDS).until(() -> processedEventRepository.existsById(eventId));
+        ProcessedInboundEvent processedEvent = processedEventRepository.findById(eventId).orElseThrow();
+        assertThat(processedEvent.getTopic(), equalTo(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC));
+        assertThat(processedEvent.getSourcePartition(), equalTo(2));
+        assertThat(recentEventIdCache.contains(new TopicPartition(DEMO_IDEMPOTENT_OUTBOX_TEST_TOPIC, 2), eventId), equalTo(true));
+    }
+}
@@ -0,0 +1,91 @@
+package demo.idempotentconsumer.service;
+
+import demo.idempotentconsumer.IntegrationTestBase;
+import demo.idempotentconsumer.model.event.inbound.InboundEvent;
+import demo.idempotentconsumer.repository.OutboxEventRepository;
+import demo.idempotentconsumer.repository.ProcessedEventRepository;
+import demo.idempotentconsumer.repository.PurchaseOrderRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.UUID;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+/**
+ * This test class demonstrates processing with short transactions, where the outbound message is sent before the
+ * transaction recording the event begins.
+ *
+ *     Redelivered events are still rejected before anything is sent, and the time spent waiting for a connection is
+ *     reported by the pool.
+ */
+@Slf4j
+@EmbeddedKafka(partitions = 1, controlledShutdown = true)
+@TestPropertySource(properties = "processing.shortTransactions=true")
+class ShortTransactionTest extends IntegrationTestBase {
+
+    final static String DEMO_IDEMPOTENT_TEST_TOPIC = "demo-idempotent-inbound-topic";
+
+    @Autowired
+    private TestConfig.KafkaTestListener testReceiver;
+
+    @Autowired
+    private PurchaseOrderRepository purchaseOrderRepository;
+
+    @Autowired
+    private ProcessedEventRepository processedEventRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        super.setUp();
+        testReceiver.counter.set(0);
+
+        // Cleaning database
+        purchaseOrderRepository.deleteAll();
+        processedEventRepository.deleteAll();
+        outboxEventRepository.deleteAll();
+    }
+
+    @Test
+    public void testDuplicatesRejectedBeforeSending() throws Exception {
+        UUID eventId = UUID.randomUUID();
+        InboundEvent inboundEvent = getInboundEvent("someData");
+
+        // Send the message multiple times
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+        sendMessage(DEMO_IDEMPOTENT_TEST_TOPIC, eventId.toString(), "someKey", inboundEvent);
+
+        Thread.sleep(10000);
+
+        assertThat(testReceiver.counter.get(), equalTo(1));
+        assertThat(purchaseOrderRepository.count(), equalTo(1L));
+        assertThat(processedEventRepository.count(), equalTo(1L));
+
+        long connectionsAcquired = meterRegistry.find("hikaricp.connections.acquire").timers().stream()
+                .mapToLong(Timer::count)
+                .sum();
+        assertThat(connectionsAcquired, greaterThan(0L));
+    }
+
+    InboundEvent getInboundEvent(String data) {
+        return InboundEvent.builder()
+                .id(UUID.randomUUID().toString())
+                .data(data)
+                .build();
+    }
+}